@@ -0,0 +1,92 @@
+package comp127.weather.api;
+
+import org.json.JSONObject;
+import org.json.JSONStreamWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures publishing weather snapshots as JSON through JSONObject(Object bean), which reads each
+ * object’s getters: one CurrentConditions, one ForecastConditions, and a whole WeatherData with
+ * 40 forecasts. For comparison, weatherDataWriteJson streams the same snapshot as UTF-8 with
+ * WeatherData.writeJson(), without any tree. Run with the gc profiler (as the jmh Gradle task
+ * does) to get bytes allocated per conversion as gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BeanConversionBenchmark {
+    private static final double LAT = 44.94, LON = -93.17;
+
+    private CurrentConditions currentConditions;
+    private ForecastConditions forecastConditions;
+    private WeatherData weatherData;
+    private final ByteBuffer jsonBytes = ByteBuffer.allocate(1 << 16);
+    private final JSONStreamWriter jsonWriter = new JSONStreamWriter(jsonBytes);
+
+    @Setup
+    public void generateData() throws IOException {
+        byte[] currentJson = OpenWeatherPayloads.currentWeather(1, LAT, LON).getBytes(StandardCharsets.UTF_8);
+        byte[] forecastJson = OpenWeatherPayloads.hourlyForecast(2, LAT, LON, 40).getBytes(StandardCharsets.UTF_8);
+        CurrentWeatherStreamReader.Result current = CurrentWeatherStreamReader.read(new ByteArrayInputStream(currentJson));
+        ForecastSeries forecasts = ForecastSeries.of(ForecastStreamReader.read(new ByteArrayInputStream(forecastJson)));
+        forecasts.addUncertainty();
+
+        currentConditions = current.getConditions();
+        forecastConditions = forecasts.get(0);
+        weatherData = new WeatherData(current, forecasts, List.of());
+    }
+
+    @Benchmark
+    public JSONObject currentConditions() {
+        return new JSONObject(currentConditions);
+    }
+
+    @Benchmark
+    public JSONObject forecastConditions() {
+        return new JSONObject(forecastConditions);
+    }
+
+    @Benchmark
+    public JSONObject weatherData() {
+        return new JSONObject(weatherData);
+    }
+
+    /**
+     * A whole snapshot all the way to text, as it would be sent downstream.
+     */
+    @Benchmark
+    public String weatherDataToString() {
+        return new JSONObject(weatherData).toString();
+    }
+
+    /**
+     * The same snapshot streamed into a reused buffer, as it would be sent downstream.
+     */
+    @Benchmark
+    public ByteBuffer weatherDataWriteJson() throws IOException {
+        jsonBytes.clear();
+        jsonWriter.reset();
+        weatherData.writeJson(jsonWriter);
+        jsonWriter.flush();
+        return jsonBytes;
+    }
+}
@@ -0,0 +1,77 @@
+package comp127.weather.api;
+
+import net.aksingh.owmjapis.CurrentWeather;
+import net.aksingh.owmjapis.HourlyForecast;
+import net.aksingh.owmjapis.OpenWeatherMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Compares the two ways of turning a response body into Conditions: through a String, a JSONObject
+ * tree and the owmjapis response objects, as OpenWeatherProvider used to, or straight from the
+ * bytes with the stream readers, as it does now. Neither includes adding uncertainty. Run with the
+ * gc profiler (as the jmh Gradle task does) to get bytes allocated per response as
+ * gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ResponseBindingBenchmark {
+    private static final double LAT = 44.94, LON = -93.17;
+
+    private final OpenWeatherMap openWeather = new OpenWeatherMap("benchmark");
+
+    private byte[] currentJson;
+    private byte[] forecastJson;
+
+    @Setup
+    public void generateData() {
+        currentJson = OpenWeatherPayloads.currentWeather(1, LAT, LON).getBytes(StandardCharsets.UTF_8);
+        forecastJson = OpenWeatherPayloads.hourlyForecast(2, LAT, LON, 40).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public CurrentConditions currentViaVendorObjects() {
+        CurrentWeather currentWeather = openWeather.currentWeatherFromRawResponse(
+            new String(currentJson, StandardCharsets.UTF_8));
+        return new CurrentConditions(currentWeather);
+    }
+
+    @Benchmark
+    public CurrentConditions currentDirect() throws IOException {
+        return CurrentWeatherStreamReader.read(new ByteArrayInputStream(currentJson)).getConditions();
+    }
+
+    @Benchmark
+    public ForecastSeries forecastViaVendorObjects() {
+        HourlyForecast hourlyForecast = openWeather.hourlyForecastFromRawResponse(
+            new String(forecastJson, StandardCharsets.UTF_8));
+        return ForecastSeries.of(
+            hourlyForecast.getForecasts().stream()
+                .map(ForecastConditions::new)
+                .collect(toList()));
+    }
+
+    @Benchmark
+    public ForecastSeries forecastDirect() throws IOException {
+        return ForecastSeries.of(ForecastStreamReader.read(new ByteArrayInputStream(forecastJson)));
+    }
+}
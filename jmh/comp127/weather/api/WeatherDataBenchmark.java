@@ -0,0 +1,102 @@
+package comp127.weather.api;
+
+import net.aksingh.owmjapis.CurrentWeather;
+import net.aksingh.owmjapis.HourlyForecast;
+import net.aksingh.owmjapis.OWMTransport;
+import net.aksingh.owmjapis.OpenWeatherMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures turning API data into a WeatherData snapshot, at the usual forecast length and at 10
+ * and 100 times that. Run with the gc profiler (as the jmh Gradle task does) to get bytes
+ * allocated per snapshot as gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class WeatherDataBenchmark {
+    private static final double LAT = 44.94, LON = -93.17;
+
+    @Param({ "40", "400", "4000" })
+    public int forecastCount;
+
+    private byte[] forecastJson;
+    private CurrentWeather currentWeather;
+    private HourlyForecast hourlyForecast;
+    private CurrentWeatherStreamReader.Result current;
+    private List<ForecastConditions> forecasts;
+    private ForecastSeries forecastSeries;
+
+    @Setup
+    public void generateData() throws IOException {
+        byte[] currentJson = OpenWeatherPayloads.currentWeather(1, LAT, LON).getBytes(StandardCharsets.UTF_8);
+        forecastJson = OpenWeatherPayloads.hourlyForecast(2, LAT, LON, forecastCount).getBytes(StandardCharsets.UTF_8);
+
+        // The vendor response classes can only be made by OpenWeatherMap, so feed it canned responses
+        OpenWeatherMap openWeather = new OpenWeatherMap("benchmark");
+        openWeather.setTransport(new OWMTransport() {
+            @Override
+            public <T> T get(String requestAddress, BodyReader<T> bodyReader) {
+                byte[] body = requestAddress.contains("forecast?") ? forecastJson : currentJson;
+                try {
+                    return bodyReader.read(new ByteArrayInputStream(body));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        currentWeather = openWeather.currentWeatherByCoordinates((float) LAT, (float) LON);
+        hourlyForecast = openWeather.hourlyForecastByCoordinates((float) LAT, (float) LON);
+        current = CurrentWeatherStreamReader.read(new ByteArrayInputStream(currentJson));
+        forecasts = ForecastStreamReader.read(new ByteArrayInputStream(forecastJson));
+        forecastSeries = ForecastSeries.of(forecasts);
+    }
+
+    /**
+     * Mapping already-parsed OpenWeatherMap objects, including adding uncertainty.
+     */
+    @Benchmark
+    public WeatherData fromVendorObjects() {
+        return new WeatherData(currentWeather, hourlyForecast);
+    }
+
+    /**
+     * Decoding the forecast straight from the response bytes, as OpenWeatherProvider does,
+     * including adding uncertainty.
+     */
+    @Benchmark
+    public WeatherData fromForecastStream() throws IOException {
+        ForecastSeries decoded = ForecastSeries.of(ForecastStreamReader.read(new ByteArrayInputStream(forecastJson)));
+        decoded.addUncertainty();
+        return new WeatherData(current, decoded, List.of());
+    }
+
+    /**
+     * Adding uncertainty alone. This keeps widening the same forecasts' temperature ranges, which
+     * does not change how long it takes.
+     */
+    @Benchmark
+    public ForecastSeries addUncertainty() {
+        forecastSeries.addUncertainty();
+        return forecastSeries;
+    }
+}
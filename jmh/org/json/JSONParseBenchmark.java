@@ -0,0 +1,141 @@
+package org.json;
+
+import comp127.weather.api.OpenWeatherPayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses OpenWeather responses of various shapes and sizes with the vendored org.json:
+ *
+ *   current      current weather for one place (~0.5 KB)
+ *   hourly       5 day / 3 hour forecast, 40 entries (~16 KB)
+ *   daily        16 day daily forecast (~6 KB)
+ *   multiCity    current weather for 200 places (~95 KB)
+ *
+ * The payloads come from OpenWeatherPayloads with fixed seeds, so every run parses the same text.
+ * The read benchmarks pick out the time, temperature and description of each entry, as the
+ * response classes do, from a tree parsed eagerly and from one decoded lazily through a JSONIndex,
+ * to show how much parse work lazy decoding skips. Run with the gc profiler (as the jmh Gradle
+ * task does) to see allocation per parse alongside the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class JSONParseBenchmark {
+    @Param({ "current", "hourly", "daily", "multiCity" })
+    public String payload;
+
+    private String json;
+
+    @Setup
+    public void generatePayload() {
+        switch (payload) {
+        case "current":
+            json = OpenWeatherPayloads.currentWeather(1, 44.94, -93.17);
+            break;
+        case "hourly":
+            json = OpenWeatherPayloads.hourlyForecast(2, 44.94, -93.17, 40);
+            break;
+        case "daily":
+            json = OpenWeatherPayloads.dailyForecast(3, 44.94, -93.17, 16);
+            break;
+        case "multiCity":
+            json = OpenWeatherPayloads.multiCity(4, 200);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown payload " + payload);
+        }
+    }
+
+    /**
+     * The way the OpenWeatherMap response classes parse: a JSONObject tree from a String.
+     */
+    @Benchmark
+    public JSONObject parseString() {
+        return new JSONObject(json);
+    }
+
+    /**
+     * A JSONObject tree from a Reader, as when parsing straight from a response stream.
+     */
+    @Benchmark
+    public JSONObject parseReader() {
+        return new JSONObject(new JSONTokener(new StringReader(json)));
+    }
+
+    /**
+     * Tokenizing without building anything, as a lower bound for tree building.
+     */
+    @Benchmark
+    public JSONPullParser.Event pullParseSkip() {
+        JSONPullParser parser = new JSONPullParser(json);
+        parser.next();
+        parser.skipValue();
+        return parser.next();
+    }
+
+    /**
+     * Finding the structure without decoding any values, as the lower bound for reading lazily.
+     */
+    @Benchmark
+    public JSONObject parseLazy() {
+        return new JSONIndex(json).toJSONObject();
+    }
+
+    @Benchmark
+    public double readFieldsEager() {
+        return readFields(new JSONObject(json));
+    }
+
+    @Benchmark
+    public double readFieldsLazy() {
+        return readFields(new JSONIndex(json).toJSONObject());
+    }
+
+    /**
+     * Reads the time, temperature and description of each entry of a response.
+     */
+    private static double readFields(JSONObject response) {
+        JSONArray list = response.optJSONArray("list");
+        if (list == null) {
+            return readEntry(response);
+        }
+        double total = 0;
+        for (int i = 0; i < list.length(); i++) {
+            total += readEntry(list.optJSONObject(i));
+        }
+        return total;
+    }
+
+    private static double readEntry(JSONObject entry) {
+        JSONObject main = entry.optJSONObject("main");
+        double temperature = main != null
+            ? main.optDouble("temp")
+            : entry.optJSONObject("temp").optDouble("day");
+        String description = entry.optJSONArray("weather").optJSONObject(0).optString("description");
+        return entry.optLong("dt") + temperature + description.length();
+    }
+
+    /**
+     * Writing a parsed tree back out, which the response classes do for every response.
+     */
+    @Benchmark
+    public String parseAndWrite() {
+        return new JSONObject(json).toString();
+    }
+}
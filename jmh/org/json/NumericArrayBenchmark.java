@@ -0,0 +1,76 @@
+package org.json;
+
+import comp127.weather.api.OpenWeatherPayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a series of hourly readings stored as one array of numbers per field, and reads it back
+ * with optDouble() and getLong(), for a month and for a year of hours. The arrays are kept in
+ * NumberLists, so the gc profiler (as the jmh Gradle task runs) shows what the parse allocates
+ * with no boxed numbers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NumericArrayBenchmark {
+    @Param({ "720", "8760" })
+    public int hours;
+
+    private String json;
+    private JSONObject parsed;
+
+    @Setup
+    public void generatePayload() {
+        json = OpenWeatherPayloads.hourlySeries(5, 44.94, -93.17, hours);
+        parsed = new JSONObject(json);
+    }
+
+    @Benchmark
+    public JSONObject parse() {
+        return new JSONObject(json);
+    }
+
+    /**
+     * The mean temperature over the daytime hours, from an already parsed series.
+     */
+    @Benchmark
+    public double readParsed() {
+        return meanDaytimeTemperature(parsed);
+    }
+
+    @Benchmark
+    public double parseAndRead() {
+        return meanDaytimeTemperature(new JSONObject(json));
+    }
+
+    private static double meanDaytimeTemperature(JSONObject series) {
+        JSONArray times = series.getJSONArray("dt");
+        JSONArray temperatures = series.getJSONArray("temp");
+        double total = 0;
+        int count = 0;
+        for (int i = 0; i < times.length(); i++) {
+            // Noon to midnight UTC is daytime at this longitude
+            long hour = (times.getLong(i) / 3600) % 24;
+            if (hour >= 12 && hour < 24) {
+                total += temperatures.optDouble(i);
+                count++;
+            }
+        }
+        return total / count;
+    }
+}
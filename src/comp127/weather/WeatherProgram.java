@@ -1,6 +1,10 @@
 package comp127.weather;
 
 import comp127.weather.api.OpenWeatherProvider;
+import comp127.weather.api.WeatherData;
+import comp127.weather.api.WeatherDiskCache;
+import comp127.weather.api.WeatherPublisher;
+import comp127.weather.api.WeatherRefreshScheduler;
 import comp127.weather.widgets.*;
 import edu.macalester.graphics.CanvasWindow;
 import edu.macalester.graphics.Rectangle;
@@ -20,13 +24,17 @@ public class WeatherProgram {
 
     private CanvasWindow canvas;
 
+    private final OpenWeatherProvider weatherProvider = new OpenWeatherProvider(FORECAST_LAT, FORECAST_LON);
+    private final WeatherRefreshScheduler refreshScheduler = new WeatherRefreshScheduler(weatherProvider);
+
     private double miniWidgetSize, largeWidgetSize;
     private List<WeatherWidget> miniWidgets, largeWidgets;
     private WeatherWidget displayedLargeWidget;
     private Rectangle selectionHighlight;
 
     /**
-     * Opens a window, displays the weather UI, and fetches weather conditions.
+     * Opens a window, displays the weather UI, and fetches weather conditions, refreshing them
+     * periodically for as long as the window is open.
      *
      * @param largeWidgetSize The height and width of the large widget. The window size is derived
      *                        from this value combined with the number of widget choices.
@@ -71,20 +79,19 @@ public class WeatherProgram {
             }
         });
 
-        updateWeather();
+        weatherProvider.setDiskCache(WeatherDiskCache.fromProperties());
+        weatherProvider.updates().subscribe(WeatherPublisher.onSwingThread(this::showWeather));
+        refreshScheduler.start();
     }
 
-    private void updateWeather() {
-        new OpenWeatherProvider(FORECAST_LAT, FORECAST_LON)
-                .fetchWeather((weatherData) -> {
-                    for (WeatherWidget widget : miniWidgets) {
-                        widget.update(weatherData);
-                    }
-                    for (WeatherWidget widget : largeWidgets) {
-                        widget.update(weatherData);
-                    }
-                    canvas.draw();
-                });
+    private void showWeather(WeatherData weatherData) {
+        for (WeatherWidget widget : miniWidgets) {
+            widget.update(weatherData);
+        }
+        for (WeatherWidget widget : largeWidgets) {
+            widget.update(weatherData);
+        }
+        canvas.draw();
     }
 
     private List<WeatherWidget> createWidgets(double size) {
@@ -0,0 +1,165 @@
+package comp127.weather.api;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps this process within an OpenWeather API key’s call limits. All providers using the same key
+ * share one quota, no matter how many of them there are.
+ *
+ * The quota is a pair of token buckets, one per minute and one per day. Each API request takes a
+ * token from both. Short bursts are allowed up to a sixth of the per-minute limit; beyond that,
+ * requests are spaced out evenly. A request that would have to wait longer than the maximum wait
+ * fails with a QuotaExceededException instead.
+ *
+ * The limits come from weather-display.properties:
+ *
+ *   api.calls.per.minute   (default 60, the free plan limit)
+ *   api.calls.per.day      (default unlimited)
+ *   api.max.wait.seconds   (default 30)
+ *
+ * The quota only knows about calls made by this process since it started.
+ */
+public class ApiQuota {
+    private static final Map<String, ApiQuota> quotas = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the shared quota for the given API key.
+     */
+    public static ApiQuota forApiKey(String apiKey) {
+        return quotas.computeIfAbsent(apiKey, key ->
+            new ApiQuota(
+                intProperty("api.calls.per.minute", 60),
+                intProperty("api.calls.per.day", Integer.MAX_VALUE),
+                Duration.ofSeconds(intProperty("api.max.wait.seconds", 30))));
+    }
+
+    /**
+     * Replaces the quota for an API key, e.g. so a load test against a local server is not held
+     * to the real API's limits.
+     */
+    static void setQuota(String apiKey, ApiQuota quota) {
+        quotas.put(apiKey, quota);
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        String value = OpenWeatherProvider.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring invalid " + name + " in weather-display.properties: " + value);
+            return defaultValue;
+        }
+    }
+
+    private final TokenBucket perMinute, perDay;
+    private final long maxWaitNanos;
+
+    /**
+     * Creates a standalone quota. Most code should use forApiKey() instead, so that all users of a
+     * key share its limits.
+     */
+    public ApiQuota(int callsPerMinute, int callsPerDay, Duration maxWait) {
+        if (callsPerMinute < 1 || callsPerDay < 1) {
+            throw new IllegalArgumentException("Call limits must be at least 1");
+        }
+        perMinute = new TokenBucket(Math.max(1, callsPerMinute / 6), callsPerMinute, TimeUnit.MINUTES.toNanos(1));
+        perDay = new TokenBucket(callsPerDay, callsPerDay, TimeUnit.DAYS.toNanos(1));
+        maxWaitNanos = maxWait.toNanos();
+    }
+
+    /**
+     * Reserves one API call, waiting until the limits allow it.
+     *
+     * @throws QuotaExceededException if that would mean waiting longer than the maximum wait.
+     */
+    void acquire() throws WeatherException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            perMinute.refill(now);
+            perDay.refill(now);
+            waitNanos = Math.max(perMinute.nanosUntilAvailable(), perDay.nanosUntilAvailable());
+            if (waitNanos > maxWaitNanos) {
+                throw new QuotaExceededException(
+                    "API call limit reached ("
+                        + getRemainingThisMinute() + " calls left this minute, "
+                        + getRemainingToday() + " today)",
+                    Duration.ofNanos(waitNanos));
+            }
+            // Taking the tokens now, even if that leaves the buckets in debt, queues up later
+            // callers behind this one
+            perMinute.take();
+            perDay.take();
+        }
+
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new WeatherException("Interrupted while waiting for API quota", e);
+            }
+        }
+    }
+
+    /**
+     * The number of calls that could be made right now without waiting.
+     */
+    public synchronized long getRemainingThisMinute() {
+        perMinute.refill(System.nanoTime());
+        return perMinute.available();
+    }
+
+    /**
+     * The number of calls left in the daily limit.
+     */
+    public synchronized long getRemainingToday() {
+        perDay.refill(System.nanoTime());
+        return perDay.available();
+    }
+
+    @Override
+    public String toString() {
+        return "ApiQuota{"
+            + "remainingThisMinute=" + getRemainingThisMinute()
+            + ", remainingToday=" + getRemainingToday()
+            + '}';
+    }
+
+    private static class TokenBucket {
+        private final double capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double capacity, double tokensPerPeriod, long periodNanos) {
+            this.capacity = capacity;
+            this.tokensPerNano = tokensPerPeriod / periodNanos;
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+
+        long nanosUntilAvailable() {
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+
+        void take() {
+            tokens -= 1;
+        }
+
+        long available() {
+            return Math.max(0, (long) Math.floor(tokens));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package comp127.weather.api;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending requests to one part of the API after several failures in a row. Once it has
+ * been open for a while, a single trial request is let through; if that succeeds, requests flow
+ * normally again, and if not, the breaker stays open for another period.
+ *
+ * There is one breaker per upstream for the whole process, shared by all providers.
+ */
+final class CircuitBreaker {
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    static CircuitBreaker forUpstream(String upstream) {
+        return breakers.computeIfAbsent(upstream, CircuitBreaker::new);
+    }
+
+    private final String upstream;
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean open, trialInFlight;
+
+    private CircuitBreaker(String upstream) {
+        this.upstream = upstream;
+    }
+
+    /**
+     * Asks permission to send a request. Every successful call must be followed by exactly one
+     * call to recordSuccess(), recordFailure() or release().
+     *
+     * @throws CircuitOpenException if requests are currently being refused.
+     */
+    synchronized void acquire() throws CircuitOpenException {
+        if (!open) {
+            return;
+        }
+        long waitNanos = openUntil - System.nanoTime();
+        if (waitNanos > 0 || trialInFlight) {
+            throw new CircuitOpenException(
+                "Not requesting " + upstream + " after " + consecutiveFailures + " failures in a row",
+                Duration.ofNanos(Math.max(0, waitNanos)));
+        }
+        trialInFlight = true;
+    }
+
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        open = false;
+        trialInFlight = false;
+    }
+
+    /**
+     * Gives back permission without saying how the request went, e.g. because it was never sent
+     * or failed for a reason that has nothing to do with the upstream. An open breaker stays open,
+     * and lets the next request through as its trial instead.
+     */
+    synchronized void release() {
+        trialInFlight = false;
+    }
+
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (trialInFlight || consecutiveFailures >= FAILURE_THRESHOLD) {
+            if (!open) {
+                System.out.println("Pausing requests for " + upstream + " after repeated failures");
+            }
+            open = true;
+            openUntil = System.nanoTime() + OPEN_NANOS;
+        }
+        trialInFlight = false;
+    }
+}
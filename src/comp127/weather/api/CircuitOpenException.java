@@ -0,0 +1,23 @@
+package comp127.weather.api;
+
+import java.time.Duration;
+
+/**
+ * Thrown instead of making a request when recent requests to the same part of the API have kept
+ * failing, so that callers find out right away rather than waiting for yet another timeout.
+ */
+public class CircuitOpenException extends WeatherException {
+    private final Duration retryAfter;
+
+    public CircuitOpenException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Roughly how long until requests will be tried again.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
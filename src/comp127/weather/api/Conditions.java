@@ -1,25 +1,96 @@
 package comp127.weather.api;
 
 import net.aksingh.owmjapis.Tools;
+import org.json.JSONPullParser;
+import org.json.JSONStreamWriter;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Weather information shared by both current conditions and future forecasts.
  *
- * Note that almost all fields may be null. In particular, note that the numerical values use Double
- * (a nullable object type), and not double (the non-nullable primitive type).
+ * Note that almost all fields may be null. In particular, note that the numerical getters return
+ * Double (a nullable object type), and not double (the non-nullable primitive type). Code that reads
+ * many values, such as a widget redrawing on every mouse move, can use the has…() and …AsDouble()
+ * methods instead, which do not allocate. (Those are deliberately not named get…(), so that they
+ * are not mistaken for bean properties, e.g. by new JSONObject(conditions).)
  */
 public abstract class Conditions {
     private static final Tools weatherUtils = new Tools();
 
-    protected Double cloudCoverage;
-    protected Double temperature;
-    protected Double pressure;
-    protected Double humidity;
-    protected Double windSpeed;
-    protected Double windDirectionInDegrees;
+    private static final int MAX_ICON_PATHS = 64;
+    private static final Map<String, String> iconPaths = new ConcurrentHashMap<>();
+
+    // Bits in the present mask, one for each numeric field that has a value
+    private static final int
+        CLOUD_COVERAGE = 1,
+        TEMPERATURE = 1 << 1,
+        PRESSURE = 1 << 2,
+        HUMIDITY = 1 << 3,
+        WIND_SPEED = 1 << 4,
+        WIND_DIRECTION = 1 << 5;
+
+    // A field whose bit is clear is missing, and holds NaN. A field whose bit is set may still be
+    // NaN, if that is the value we were given.
+    private double cloudCoverage = Double.NaN;
+    private double temperature = Double.NaN;
+    private double pressure = Double.NaN;
+    private double humidity = Double.NaN;
+    private double windSpeed = Double.NaN;
+    private double windDirectionInDegrees = Double.NaN;
+    private byte present;
+
     protected String weatherDescription;
     protected String weatherIconFile;
 
+    // Derived from the fields above the first time they are asked for. Conditions are not modified
+    // once constructed, so these never go out of date.
+    private String weatherIcon;
+    private String windDirectionAsString;
+    private boolean windDirectionAsStringComputed;
+
+    private double set(int bit, Double value) {
+        if (value == null) {
+            present &= ~bit;
+            return Double.NaN;
+        }
+        present |= bit;
+        return value;
+    }
+
+    private Double get(int bit, double value) {
+        return (present & bit) != 0 ? value : null;
+    }
+
+    protected void setCloudCoverage(Double cloudCoverage) {
+        this.cloudCoverage = set(CLOUD_COVERAGE, cloudCoverage);
+    }
+
+    protected void setTemperature(Double temperature) {
+        this.temperature = set(TEMPERATURE, temperature);
+    }
+
+    protected void setPressure(Double pressure) {
+        this.pressure = set(PRESSURE, pressure);
+    }
+
+    protected void setHumidity(Double humidity) {
+        this.humidity = set(HUMIDITY, humidity);
+    }
+
+    protected void setWindSpeed(Double windSpeed) {
+        this.windSpeed = set(WIND_SPEED, windSpeed);
+    }
+
+    protected void setWindDirectionInDegrees(Double windDirectionInDegrees) {
+        this.windDirectionInDegrees = set(WIND_DIRECTION, windDirectionInDegrees);
+    }
+
     protected static Double nullIfNaN(double value) {
         return Double.isNaN(value) ? null : value;
     }
@@ -28,11 +99,184 @@ public abstract class Conditions {
         return (str == null || str.isBlank()) ? null : str;
     }
 
+    /**
+     * Writes the fields shared by all conditions in WeatherDiskCache's format.
+     */
+    protected void writeConditions(DataOutput out) throws IOException {
+        WeatherDataCodec.writeDouble(out, getCloudCoverage());
+        WeatherDataCodec.writeDouble(out, getTemperature());
+        WeatherDataCodec.writeDouble(out, getPressure());
+        WeatherDataCodec.writeDouble(out, getHumidity());
+        WeatherDataCodec.writeDouble(out, getWindSpeed());
+        WeatherDataCodec.writeDouble(out, getWindDirectionInDegrees());
+        WeatherDataCodec.writeString(out, weatherDescription);
+        WeatherDataCodec.writeString(out, weatherIconFile);
+    }
+
+    /**
+     * Writes the fields shared by all conditions as keys and values of the JSON object that out
+     * is in.
+     */
+    protected void writeConditionsJson(JSONStreamWriter out) {
+        WeatherDataJson.writeNumber(out, "cloudCoverage", cloudCoverage);
+        WeatherDataJson.writeNumber(out, "temperature", temperature);
+        WeatherDataJson.writeNumber(out, "pressure", pressure);
+        WeatherDataJson.writeNumber(out, "humidity", humidity);
+        WeatherDataJson.writeNumber(out, "windSpeed", windSpeed);
+        WeatherDataJson.writeNumber(out, "windDirectionInDegrees", windDirectionInDegrees);
+        WeatherDataJson.writeString(out, "weatherDescription", weatherDescription);
+        out.key("weatherIcon").value(getWeatherIcon());
+    }
+
+    /**
+     * Reads the fields written by writeConditions().
+     */
+    protected void readConditions(ByteBuffer in) {
+        setCloudCoverage(WeatherDataCodec.readDouble(in));
+        setTemperature(WeatherDataCodec.readDouble(in));
+        setPressure(WeatherDataCodec.readDouble(in));
+        setHumidity(WeatherDataCodec.readDouble(in));
+        setWindSpeed(WeatherDataCodec.readDouble(in));
+        setWindDirectionInDegrees(WeatherDataCodec.readDouble(in));
+        weatherDescription = WeatherDataCodec.readString(in);
+        weatherIconFile = WeatherDataCodec.readString(in);
+    }
+
+    // Helpers for reading values straight from a JSONPullParser. They interpret values the same way
+    // owmjapis does (numeric strings count as numbers, anything unexpected is treated as missing)
+    // so that streaming and non-streaming parsing give identical results.
+
+    /**
+     * Reads the current value as a number, or NaN if it is not one. The result is rounded to float
+     * precision, since that is what owmjapis stores.
+     */
+    protected static double readNumber(JSONPullParser parser) {
+        switch (parser.getEvent()) {
+            case NUMBER:
+                return (float) parser.getDouble();
+            case STRING:
+                try {
+                    return (float) Double.parseDouble(parser.getString());
+                } catch (NumberFormatException e) {
+                    return Double.NaN;
+                }
+            default:
+                parser.skipValue();
+                return Double.NaN;
+        }
+    }
+
+    /**
+     * Reads the current value as a whole number, or Long.MIN_VALUE if it is not one.
+     */
+    protected static long readLong(JSONPullParser parser) {
+        switch (parser.getEvent()) {
+            case NUMBER:
+                return parser.getLong();
+            case STRING:
+                try {
+                    return new BigDecimal(parser.getString()).longValue();
+                } catch (NumberFormatException e) {
+                    return Long.MIN_VALUE;
+                }
+            default:
+                parser.skipValue();
+                return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Reads the current value as a string, or null if it is null or a nested object or array.
+     */
+    protected static String readString(JSONPullParser parser) {
+        switch (parser.getEvent()) {
+            case STRING:
+            case NUMBER:
+                return parser.getString();
+            case BOOLEAN:
+                return String.valueOf(parser.getBoolean());
+            default:
+                parser.skipValue();
+                return null;
+        }
+    }
+
+    /**
+     * Reads the cloud coverage from a "clouds" object.
+     */
+    protected void readClouds(JSONPullParser parser) {
+        if (parser.getEvent() != JSONPullParser.Event.START_OBJECT) {
+            parser.skipValue();
+            return;
+        }
+        double all = Double.NaN;
+        while (parser.next() == JSONPullParser.Event.KEY) {
+            String key = parser.getString();
+            parser.next();
+            if (key.equals("all")) {
+                all = readNumber(parser);
+            } else {
+                parser.skipValue();
+            }
+        }
+        setCloudCoverage(nullIfNaN(all));
+    }
+
+    /**
+     * Reads the weather description and icon from the first entry of a "weather" array, and skips
+     * the rest of the array.
+     */
+    protected void readWeatherList(JSONPullParser parser) {
+        if (parser.getEvent() != JSONPullParser.Event.START_ARRAY) {
+            parser.skipValue();
+            return;
+        }
+        boolean first = true;
+        while (parser.next() != JSONPullParser.Event.END_ARRAY) {
+            if (!first || parser.getEvent() != JSONPullParser.Event.START_OBJECT) {
+                parser.skipValue();
+                continue;
+            }
+            first = false;
+
+            String description = null, icon = null;
+            while (parser.next() == JSONPullParser.Event.KEY) {
+                String key = parser.getString();
+                parser.next();
+                switch (key) {
+                    case "description":
+                        description = readString(parser);
+                        break;
+                    case "icon":
+                        icon = readString(parser);
+                        break;
+                    default:
+                        parser.skipValue();
+                }
+            }
+            if (description != null && !description.isEmpty()) {
+                weatherDescription = nullIfBlank(description);
+                weatherIconFile = nullIfBlank(icon);
+            }
+        }
+    }
+
     /**
      * The current cloud coverage as a percent from 0 to 100%.
      * @return (returns 0 % in case of error)
      */
     public Double getCloudCoverage() {
+        return get(CLOUD_COVERAGE, cloudCoverage);
+    }
+
+    public boolean hasCloudCoverage() {
+        return (present & CLOUD_COVERAGE) != 0;
+    }
+
+    /**
+     * Same as getCloudCoverage(), but returns NaN instead of null if there is no value.
+     */
+    public double cloudCoverageAsDouble() {
         return cloudCoverage;
     }
 
@@ -41,6 +285,17 @@ public abstract class Conditions {
      * data (defaults to Fahrenheit).
      */
     public Double getTemperature() {
+        return get(TEMPERATURE, temperature);
+    }
+
+    public boolean hasTemperature() {
+        return (present & TEMPERATURE) != 0;
+    }
+
+    /**
+     * Same as getTemperature(), but returns NaN instead of null if there is no value.
+     */
+    public double temperatureAsDouble() {
         return temperature;
     }
 
@@ -48,6 +303,17 @@ public abstract class Conditions {
      * The atmospheric pressure.
      */
     public Double getPressure() {
+        return get(PRESSURE, pressure);
+    }
+
+    public boolean hasPressure() {
+        return (present & PRESSURE) != 0;
+    }
+
+    /**
+     * Same as getPressure(), but returns NaN instead of null if there is no value.
+     */
+    public double pressureAsDouble() {
         return pressure;
     }
 
@@ -55,6 +321,17 @@ public abstract class Conditions {
      * The relative humidity, as a percent.
      */
     public Double getHumidity() {
+        return get(HUMIDITY, humidity);
+    }
+
+    public boolean hasHumidity() {
+        return (present & HUMIDITY) != 0;
+    }
+
+    /**
+     * Same as getHumidity(), but returns NaN instead of null if there is no value.
+     */
+    public double humidityAsDouble() {
         return humidity;
     }
 
@@ -63,6 +340,17 @@ public abstract class Conditions {
      * units in OpenWeatherProvider.
      */
     public Double getWindSpeed() {
+        return get(WIND_SPEED, windSpeed);
+    }
+
+    public boolean hasWindSpeed() {
+        return (present & WIND_SPEED) != 0;
+    }
+
+    /**
+     * Same as getWindSpeed(), but returns NaN instead of null if there is no value.
+     */
+    public double windSpeedAsDouble() {
         return windSpeed;
     }
 
@@ -70,17 +358,37 @@ public abstract class Conditions {
      * A textual description of the compass direction of the wind, such as "S" or "NNW".
      */
     public String getWindDirectionAsString() {
-        if (windDirectionInDegrees != null && windDirectionInDegrees >= 0 && windDirectionInDegrees <= 360) {
-            return weatherUtils.convertDegree2Direction(windDirectionInDegrees.floatValue());
-        } else {
-            return null;
+        if (!windDirectionAsStringComputed) {
+            if (hasWindDirection()) {
+                windDirectionAsString = compassDirection(windDirectionInDegrees);
+            }
+            windDirectionAsStringComputed = true;
         }
+        return windDirectionAsString;
+    }
+
+    /**
+     * The compass direction for a wind direction in degrees, or null if it is out of range.
+     */
+    static String compassDirection(double degrees) {
+        return degrees >= 0 && degrees <= 360 ? weatherUtils.convertDegree2Direction((float) degrees) : null;
     }
 
     /**
      * The wind direction, in degrees clockwise from north.
      */
     public Double getWindDirectionInDegrees() {
+        return get(WIND_DIRECTION, windDirectionInDegrees);
+    }
+
+    public boolean hasWindDirection() {
+        return (present & WIND_DIRECTION) != 0;
+    }
+
+    /**
+     * Same as getWindDirectionInDegrees(), but returns NaN instead of null if there is no value.
+     */
+    public double windDirectionInDegreesAsDouble() {
         return windDirectionInDegrees;
     }
 
@@ -92,11 +400,41 @@ public abstract class Conditions {
         return weatherDescription;
     }
 
+    /**
+     * The icon's file name as the API gives it (e.g. "01d"), or null if there is none.
+     */
+    String weatherIconFile() {
+        return weatherIconFile;
+    }
+
     /**
      * Returns the resource path for an image representing the current weather. Never returns null;
      * if the weather conditions are missing or unknown, returns an "unknown" icon.
      */
     public String getWeatherIcon() {
-        return "condition-icons/" + (weatherIconFile != null ? weatherIconFile : "unknown") + ".png";
+        String icon = weatherIcon;
+        if (icon == null) {
+            icon = weatherIcon = iconPath(weatherIconFile);
+        }
+        return icon;
+    }
+
+    /**
+     * OpenWeather only has a couple dozen icons, so all conditions with the same icon share one
+     * path string. Unexpected names past that are not remembered.
+     */
+    static String iconPath(String iconFile) {
+        String name = iconFile != null ? iconFile : "unknown";
+        String path = iconPaths.get(name);
+        if (path == null) {
+            path = "condition-icons/" + name + ".png";
+            if (iconPaths.size() < MAX_ICON_PATHS) {
+                String existing = iconPaths.putIfAbsent(name, path);
+                if (existing != null) {
+                    path = existing;
+                }
+            }
+        }
+        return path;
     }
 }
@@ -2,7 +2,12 @@ package comp127.weather.api;
 
 import net.aksingh.owmjapis.AbstractWeather;
 import net.aksingh.owmjapis.CurrentWeather;
+import org.json.JSONPullParser;
+import org.json.JSONStreamWriter;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Date;
 
 /**
@@ -16,7 +21,10 @@ public class CurrentConditions extends Conditions {
     private Date sunriseTime;
     private Date sunsetTime;
 
-    private CurrentConditions() {
+    /**
+     * For BLANK, and for CurrentWeatherStreamReader, which fills in the fields with readField()
+     */
+    CurrentConditions() {
     }
 
     /**
@@ -24,16 +32,16 @@ public class CurrentConditions extends Conditions {
      */
     CurrentConditions(CurrentWeather rawCurrentConditions) {
         if (rawCurrentConditions.hasCloudsInstance()) {
-            cloudCoverage = nullIfNaN(rawCurrentConditions.getCloudsInstance().getPercentageOfClouds());
+            setCloudCoverage(nullIfNaN(rawCurrentConditions.getCloudsInstance().getPercentageOfClouds()));
         }
         if (rawCurrentConditions.hasMainInstance()) {
-            temperature = nullIfNaN(rawCurrentConditions.getMainInstance().getTemperature());
-            pressure = nullIfNaN(rawCurrentConditions.getMainInstance().getPressure());
-            humidity = nullIfNaN(rawCurrentConditions.getMainInstance().getHumidity());
+            setTemperature(nullIfNaN(rawCurrentConditions.getMainInstance().getTemperature()));
+            setPressure(nullIfNaN(rawCurrentConditions.getMainInstance().getPressure()));
+            setHumidity(nullIfNaN(rawCurrentConditions.getMainInstance().getHumidity()));
         }
         if (rawCurrentConditions.hasWindInstance()) {
-            windSpeed = nullIfNaN(rawCurrentConditions.getWindInstance().getWindSpeed());
-            windDirectionInDegrees = nullIfNaN(rawCurrentConditions.getWindInstance().getWindDegree());
+            setWindSpeed(nullIfNaN(rawCurrentConditions.getWindInstance().getWindSpeed()));
+            setWindDirectionInDegrees(nullIfNaN(rawCurrentConditions.getWindInstance().getWindDegree()));
         }
         if (rawCurrentConditions.hasSysInstance()) {
             sunriseTime = rawCurrentConditions.getSysInstance().getSunriseTime();
@@ -50,18 +58,153 @@ public class CurrentConditions extends Conditions {
         }
     }
 
+    /**
+     * For streaming from API. Reads the value of one top-level field of a current weather response,
+     * if it is one that CurrentConditions uses. This interprets the response the same way as the
+     * CurrentWeather constructor above does.
+     *
+     * @return False if the field is not used, in which case its value has not been read.
+     */
+    boolean readField(String key, JSONPullParser parser) {
+        switch (key) {
+            case "clouds":
+                readClouds(parser);
+                return true;
+            case "main":
+                readMain(parser);
+                return true;
+            case "wind":
+                readWind(parser);
+                return true;
+            case "sys":
+                readSys(parser);
+                return true;
+            case "weather":
+                readWeatherList(parser);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void readMain(JSONPullParser parser) {
+        if (parser.getEvent() != JSONPullParser.Event.START_OBJECT) {
+            parser.skipValue();
+            return;
+        }
+        double temp = Double.NaN, pressure = Double.NaN, humidity = Double.NaN;
+        while (parser.next() == JSONPullParser.Event.KEY) {
+            String key = parser.getString();
+            parser.next();
+            switch (key) {
+                case "temp":
+                    temp = readNumber(parser);
+                    break;
+                case "pressure":
+                    pressure = readNumber(parser);
+                    break;
+                case "humidity":
+                    humidity = readNumber(parser);
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        setTemperature(nullIfNaN(temp));
+        setPressure(nullIfNaN(pressure));
+        setHumidity(nullIfNaN(humidity));
+    }
+
+    private void readWind(JSONPullParser parser) {
+        if (parser.getEvent() != JSONPullParser.Event.START_OBJECT) {
+            parser.skipValue();
+            return;
+        }
+        double speed = Double.NaN, degree = Double.NaN;
+        while (parser.next() == JSONPullParser.Event.KEY) {
+            String key = parser.getString();
+            parser.next();
+            switch (key) {
+                case "speed":
+                    speed = readNumber(parser);
+                    break;
+                case "deg":
+                    degree = readNumber(parser);
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        setWindSpeed(nullIfNaN(speed));
+        setWindDirectionInDegrees(nullIfNaN(degree));
+    }
+
+    private void readSys(JSONPullParser parser) {
+        if (parser.getEvent() != JSONPullParser.Event.START_OBJECT) {
+            parser.skipValue();
+            return;
+        }
+        long sunrise = Long.MIN_VALUE, sunset = Long.MIN_VALUE;
+        while (parser.next() == JSONPullParser.Event.KEY) {
+            String key = parser.getString();
+            parser.next();
+            switch (key) {
+                case "sunrise":
+                    sunrise = readLong(parser);
+                    break;
+                case "sunset":
+                    sunset = readLong(parser);
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        sunriseTime = sunrise != Long.MIN_VALUE ? new Date(sunrise * 1000) : null;
+        sunsetTime = sunset != Long.MIN_VALUE ? new Date(sunset * 1000) : null;
+    }
+
+    /**
+     * For loading from WeatherDiskCache
+     */
+    CurrentConditions(ByteBuffer in) {
+        readConditions(in);
+        sunriseTime = WeatherDataCodec.readDate(in);
+        sunsetTime = WeatherDataCodec.readDate(in);
+    }
+
+    /**
+     * For saving to WeatherDiskCache
+     */
+    void writeTo(DataOutput out) throws IOException {
+        writeConditions(out);
+        WeatherDataCodec.writeDate(out, sunriseTime);
+        WeatherDataCodec.writeDate(out, sunsetTime);
+    }
+
+    /**
+     * Writes these conditions as a JSON object, in the form described at
+     * {@link WeatherData#writeJson(JSONStreamWriter)}.
+     */
+    public void writeJson(JSONStreamWriter out) {
+        out.object();
+        writeConditionsJson(out);
+        WeatherDataJson.writeTime(out, "sunriseTime", sunriseTime);
+        WeatherDataJson.writeTime(out, "sunsetTime", sunsetTime);
+        out.endObject();
+    }
+
     /**
      * For generating test data
      */
     CurrentConditions(double temperature, double humidity, double pressure, double cloudCoverage,
                       double windSpeed, double windDirectionInDegrees,
                       String weatherIconFile, String weatherDescription, Date sunriseTime, Date sunsetTime) {
-        this.cloudCoverage = cloudCoverage;
-        this.temperature = temperature;
-        this.pressure = pressure;
-        this.humidity = humidity;
-        this.windSpeed = windSpeed;
-        this.windDirectionInDegrees = windDirectionInDegrees;
+        setCloudCoverage(cloudCoverage);
+        setTemperature(temperature);
+        setPressure(pressure);
+        setHumidity(humidity);
+        setWindSpeed(windSpeed);
+        setWindDirectionInDegrees(windDirectionInDegrees);
         this.sunriseTime = sunriseTime;
         this.sunsetTime = sunsetTime;
         this.weatherDescription = weatherDescription;
@@ -85,12 +228,12 @@ public class CurrentConditions extends Conditions {
     @Override
     public String toString() {
         return "CurrentConditions{"
-            + "cloudCoverage=" + cloudCoverage
-            + ", temperature=" + temperature
-            + ", pressure=" + pressure
-            + ", humidity=" + humidity
-            + ", windSpeed=" + windSpeed
-            + ", windDirectionInDegrees=" + windDirectionInDegrees
+            + "cloudCoverage=" + getCloudCoverage()
+            + ", temperature=" + getTemperature()
+            + ", pressure=" + getPressure()
+            + ", humidity=" + getHumidity()
+            + ", windSpeed=" + getWindSpeed()
+            + ", windDirectionInDegrees=" + getWindDirectionInDegrees()
             + ", sunriseTime=" + sunriseTime
             + ", sunsetTime=" + sunsetTime
             + ", currentWeather='" + weatherDescription + '\''
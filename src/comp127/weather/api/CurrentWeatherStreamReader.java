@@ -0,0 +1,56 @@
+package comp127.weather.api;
+
+import org.json.JSONPullParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes an OpenWeather current weather response directly into CurrentConditions as it streams
+ * in, without first building the whole response as a String, a JSONObject tree, and a
+ * CurrentWeather (which also turns the tree back into a String to keep as its raw response).
+ */
+final class CurrentWeatherStreamReader {
+    private CurrentWeatherStreamReader() {
+    }
+
+    /**
+     * The parts of a current weather response that WeatherData uses.
+     */
+    static final class Result {
+        private final String cityName;
+        private final CurrentConditions conditions;
+
+        Result(String cityName, CurrentConditions conditions) {
+            this.cityName = cityName;
+            this.conditions = conditions;
+        }
+
+        String getCityName() {
+            return cityName;
+        }
+
+        CurrentConditions getConditions() {
+            return conditions;
+        }
+    }
+
+    static Result read(InputStream body) throws IOException {
+        try (JSONPullParser parser = new JSONPullParser(body)) {
+            parser.expect(JSONPullParser.Event.START_OBJECT);
+
+            String cityName = null;
+            CurrentConditions conditions = new CurrentConditions();
+            while (parser.next() == JSONPullParser.Event.KEY) {
+                String key = parser.getString();
+                parser.next();
+                if (key.equals("name")) {
+                    cityName = Conditions.readString(parser);
+                } else if (!conditions.readField(key, parser)) {
+                    parser.skipValue();
+                }
+            }
+            return new Result(Conditions.nullIfBlank(cityName), conditions);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package comp127.weather.api;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Which threads OpenWeatherProvider uses to wait for the server.
+ *
+ * @see OpenWeatherProvider#setExecutionMode(ExecutionMode)
+ */
+public enum ExecutionMode {
+    /**
+     * A pool of ordinary threads that grows with the number of requests in progress. This is the
+     * default, and works on any Java version.
+     */
+    THREAD_POOL,
+
+    /**
+     * A new virtual thread for every request, so that thousands of requests can wait for the
+     * server at once without thousands of operating system threads. Requires Java 21 or later at
+     * runtime; on older versions this falls back to THREAD_POOL.
+     */
+    VIRTUAL_THREADS;
+
+    /**
+     * Reads execution.mode from weather-display.properties ("thread-pool" or "virtual-threads").
+     */
+    static ExecutionMode fromProperties() {
+        String configured = OpenWeatherProvider.getProperty("execution.mode");
+        if (configured == null) {
+            return THREAD_POOL;
+        }
+        try {
+            return valueOf(configured.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring unknown execution.mode in weather-display.properties: " + configured);
+            return THREAD_POOL;
+        }
+    }
+
+    ExecutorService newExecutor() {
+        if (this == VIRTUAL_THREADS) {
+            // Looked up reflectively so that the code still compiles and runs on older Java versions
+            try {
+                return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            } catch (NoSuchMethodException e) {
+                System.err.println(
+                    "Virtual threads need Java 21 or later; running on " + System.getProperty("java.version")
+                        + ", so using a thread pool instead");
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                System.err.println("Unable to create virtual threads, so using a thread pool instead: " + e);
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+}
@@ -0,0 +1,247 @@
+package comp127.weather.api;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * How hard to try when a request to the API fails or hangs.
+ *
+ * Each attempt gets a time limit, and the whole request (all attempts plus the pauses between
+ * them) gets a deadline. Failures that might go away by themselves, such as network errors, bad
+ * responses and timeouts, are retried after a pause that doubles each time, with random jitter so
+ * that many clients do not all retry at once. Other failures, such as an unreadable response or
+ * running out of API quota, are reported right away.
+ *
+ * Independently of the policy, requests go through a circuit breaker for each part of the API, so
+ * that an endpoint that keeps failing is not asked again for a while.
+ */
+public class FetchPolicy {
+    private Duration attemptTimeout = Duration.ofSeconds(10);
+    private Duration deadline = Duration.ofSeconds(30);
+    private int maxAttempts = 3;
+    private Duration firstRetryDelay = Duration.ofMillis(500);
+    private Duration maxRetryDelay = Duration.ofSeconds(5);
+
+    /**
+     * Sets the longest to wait for any one attempt. Defaults to 10 seconds.
+     */
+    public void setAttemptTimeout(Duration attemptTimeout) {
+        this.attemptTimeout = requirePositive(attemptTimeout, "attemptTimeout");
+    }
+
+    /**
+     * Sets the longest a request may take, including all retries. Defaults to 30 seconds.
+     */
+    public void setDeadline(Duration deadline) {
+        this.deadline = requirePositive(deadline, "deadline");
+    }
+
+    /**
+     * Sets how many times to try, including the first. Defaults to 3; use 1 to never retry.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1, got " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Sets the pause before the first retry, and the cap on how far it grows. The actual pause is
+     * randomly between half and all of the current value. Defaults to 0.5 and 5 seconds.
+     */
+    public void setRetryDelays(Duration firstRetryDelay, Duration maxRetryDelay) {
+        this.firstRetryDelay = requirePositive(firstRetryDelay, "firstRetryDelay");
+        this.maxRetryDelay = requirePositive(maxRetryDelay, "maxRetryDelay");
+    }
+
+    private static Duration requirePositive(Duration value, String name) {
+        if (value.isNegative() || value.isZero()) {
+            throw new IllegalArgumentException(name + " must be positive, got " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Runs request on executor, retrying according to this policy.
+     *
+     * @param upstream Names the part of the API being called, for messages and the circuit breaker.
+     * @param executor Gives the executor for each step of the request. If it is replaced and the
+     *                 old one shut down while the request is in progress, the request carries on
+     *                 with the new one.
+     */
+    <T> CompletableFuture<T> execute(String upstream, ApiQuota quota, Supplier<ExecutorService> executor, Attempt<T> request) {
+        return new Execution<>(upstream, quota, executor, request).start();
+    }
+
+    /**
+     * One blocking try at a request.
+     */
+    interface Attempt<T> {
+        T run() throws WeatherException;
+    }
+
+    /**
+     * Failures worth retrying, and worth counting against the circuit breaker.
+     */
+    private static boolean isTransient(Throwable error) {
+        return error instanceof WeatherException
+            && !(error instanceof QuotaExceededException)
+            && !(error instanceof CircuitOpenException);
+    }
+
+    private class Execution<T> {
+        private final String upstream;
+        private final ApiQuota quota;
+        private final Supplier<ExecutorService> executor;
+        private final Attempt<T> request;
+        private final CircuitBreaker breaker;
+        private final long deadlineNanos;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private int attempts;
+
+        Execution(String upstream, ApiQuota quota, Supplier<ExecutorService> executor, Attempt<T> request) {
+            this.upstream = upstream;
+            this.quota = quota;
+            this.executor = executor;
+            this.request = request;
+            this.breaker = CircuitBreaker.forUpstream(upstream);
+            this.deadlineNanos = System.nanoTime() + deadline.toNanos();
+        }
+
+        CompletableFuture<T> start() {
+            tryOnce();
+            return result;
+        }
+
+        private void tryOnce() {
+            attempts++;
+            callUpstream().whenComplete((value, error) -> {
+                if (error == null) {
+                    result.complete(value);
+                } else {
+                    retryOrFail(unwrap(error));
+                }
+            });
+        }
+
+        private CompletableFuture<T> callUpstream() {
+            if (deadlineNanos - System.nanoTime() <= 0) {
+                return CompletableFuture.failedFuture(gaveUp());
+            }
+            try {
+                breaker.acquire();
+            } catch (CircuitOpenException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+            // Only once the breaker has let the request through, so refused requests cost no quota
+            return CompletableFuture
+                .runAsync(() -> {
+                    try {
+                        quota.acquire();
+                    } catch (WeatherException e) {
+                        breaker.release();
+                        throw new CompletionException(e);
+                    }
+                }, this::execute)
+                .thenCompose(ignored -> send());
+        }
+
+        private CompletableFuture<T> send() {
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            if (remainingNanos <= 0) {
+                // Used up waiting for quota, without asking the upstream anything
+                breaker.release();
+                return CompletableFuture.failedFuture(gaveUp());
+            }
+
+            long timeoutNanos = Math.min(attemptTimeout.toNanos(), remainingNanos);
+            CompletableFuture<T> attempt = new CompletableFuture<>();
+            Future<?> task = submit(() -> {
+                try {
+                    attempt.complete(request.run());
+                } catch (Throwable e) {
+                    attempt.completeExceptionally(e);
+                }
+            });
+            // Interrupting the worker frees it from a hung connection, so it can serve others
+            Executor timer = CompletableFuture.delayedExecutor(timeoutNanos, TimeUnit.NANOSECONDS);
+            timer.execute(() -> {
+                WeatherException timeout = new WeatherException(
+                    upstream + " did not respond within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+                if (attempt.completeExceptionally(timeout)) {
+                    task.cancel(true);
+                }
+            });
+
+            return attempt.whenComplete((value, error) -> {
+                if (error == null) {
+                    breaker.recordSuccess();
+                } else if (isTransient(unwrap(error))) {
+                    breaker.recordFailure();
+                } else {
+                    // Says nothing about whether the upstream is healthy
+                    breaker.release();
+                }
+            });
+        }
+
+        private WeatherException gaveUp() {
+            return new WeatherException("Gave up on " + upstream + " after " + deadline.toMillis() + " ms");
+        }
+
+        private void retryOrFail(Throwable error) {
+            if (isTransient(error) && attempts < maxAttempts) {
+                long delayNanos = retryDelayNanos();
+                if (System.nanoTime() + delayNanos < deadlineNanos) {
+                    System.out.println("Retrying " + upstream + " after: " + error.getMessage());
+                    CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, this::execute)
+                        .execute(this::tryOnce);
+                    return;
+                }
+            }
+            result.completeExceptionally(error);
+        }
+
+        private void execute(Runnable task) {
+            submit(task);
+        }
+
+        private Future<?> submit(Runnable task) {
+            ExecutorService current = executor.get();
+            try {
+                return current.submit(task);
+            } catch (RejectedExecutionException e) {
+                // Shut down just after being replaced; the replacement takes over
+                ExecutorService replacement = executor.get();
+                if (replacement == current) {
+                    throw e;
+                }
+                return replacement.submit(task);
+            }
+        }
+
+        private long retryDelayNanos() {
+            long cap = Math.min(
+                maxRetryDelay.toNanos(),
+                firstRetryDelay.toNanos() << Math.min(attempts - 1, 30));
+            return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
@@ -2,6 +2,8 @@ package comp127.weather.api;
 
 import net.aksingh.owmjapis.AbstractWeather;
 import net.aksingh.owmjapis.HourlyForecast;
+import org.json.JSONPullParser;
+import org.json.JSONStreamWriter;
 
 import java.util.Date;
 
@@ -12,11 +14,20 @@ import java.util.Date;
 public class ForecastConditions extends Conditions {
     public static final ForecastConditions BLANK = new ForecastConditions();
 
+    // Bits in the present mask, as in Conditions
+    private static final int
+        MIN_TEMPERATURE = 1,
+        MAX_TEMPERATURE = 1 << 1;
+
     private Date predictionTime;
-    private Double minTemperature;
-    private Double maxTemperature;
+    private double minTemperature = Double.NaN;
+    private double maxTemperature = Double.NaN;
+    private byte present;
 
-    private ForecastConditions() {
+    /**
+     * For BLANK, and for ForecastSeries.get(), which overrides every accessor
+     */
+    ForecastConditions() {
     }
 
     /**
@@ -25,18 +36,18 @@ public class ForecastConditions extends Conditions {
     ForecastConditions(HourlyForecast.Forecast rawForecast) {
         predictionTime = rawForecast.getDateTime();
         if (rawForecast.hasCloudsInstance()) {
-            cloudCoverage = nullIfNaN(rawForecast.getCloudsInstance().getPercentageOfClouds());
+            setCloudCoverage(nullIfNaN(rawForecast.getCloudsInstance().getPercentageOfClouds()));
         }
         if (rawForecast.hasMainInstance()) {
-            temperature = nullIfNaN(rawForecast.getMainInstance().getTemperature());
-            minTemperature = nullIfNaN(rawForecast.getMainInstance().getMinTemperature());
-            maxTemperature = nullIfNaN(rawForecast.getMainInstance().getMaxTemperature());
-            pressure = nullIfNaN(rawForecast.getMainInstance().getPressure());
-            humidity = nullIfNaN(rawForecast.getMainInstance().getHumidity());
+            setTemperature(nullIfNaN(rawForecast.getMainInstance().getTemperature()));
+            setMinTemperature(nullIfNaN(rawForecast.getMainInstance().getMinTemperature()));
+            setMaxTemperature(nullIfNaN(rawForecast.getMainInstance().getMaxTemperature()));
+            setPressure(nullIfNaN(rawForecast.getMainInstance().getPressure()));
+            setHumidity(nullIfNaN(rawForecast.getMainInstance().getHumidity()));
         }
         if (rawForecast.hasWindInstance() && rawForecast.getWindInstance().hasWindSpeed()) {
-            windSpeed = nullIfNaN(rawForecast.getWindInstance().getWindSpeed());
-            windDirectionInDegrees = nullIfNaN(rawForecast.getWindInstance().getWindDegree());
+            setWindSpeed(nullIfNaN(rawForecast.getWindInstance().getWindSpeed()));
+            setWindDirectionInDegrees(nullIfNaN(rawForecast.getWindInstance().getWindDegree()));
         }
         if (rawForecast.hasWeatherInstance() && rawForecast.getWeatherCount() > 0 && rawForecast.getWeatherInstance(0) != null) {
             AbstractWeather.Weather weather = rawForecast.getWeatherInstance(0);
@@ -47,6 +58,102 @@ public class ForecastConditions extends Conditions {
         }
     }
 
+    /**
+     * For streaming from API. The parser must be positioned at the start of one entry of the
+     * forecast list. This reads through the end of that entry.
+     */
+    ForecastConditions(JSONPullParser parser) {
+        while (parser.next() == JSONPullParser.Event.KEY) {
+            String key = parser.getString();
+            parser.next();
+            switch (key) {
+                case "dt":
+                    long seconds = readLong(parser);
+                    if (seconds != Long.MIN_VALUE) {
+                        predictionTime = new Date(seconds * 1000);
+                    }
+                    break;
+                case "clouds":
+                    readClouds(parser);
+                    break;
+                case "main":
+                    readMain(parser);
+                    break;
+                case "wind":
+                    readWind(parser);
+                    break;
+                case "weather":
+                    readWeatherList(parser);
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+    }
+
+    private void readMain(JSONPullParser parser) {
+        if (parser.getEvent() != JSONPullParser.Event.START_OBJECT) {
+            parser.skipValue();
+            return;
+        }
+        double temp = Double.NaN, tempMin = Double.NaN, tempMax = Double.NaN,
+            pressure = Double.NaN, humidity = Double.NaN;
+        while (parser.next() == JSONPullParser.Event.KEY) {
+            String key = parser.getString();
+            parser.next();
+            switch (key) {
+                case "temp":
+                    temp = readNumber(parser);
+                    break;
+                case "temp_min":
+                    tempMin = readNumber(parser);
+                    break;
+                case "temp_max":
+                    tempMax = readNumber(parser);
+                    break;
+                case "pressure":
+                    pressure = readNumber(parser);
+                    break;
+                case "humidity":
+                    humidity = readNumber(parser);
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        setTemperature(nullIfNaN(temp));
+        setMinTemperature(nullIfNaN(tempMin));
+        setMaxTemperature(nullIfNaN(tempMax));
+        setPressure(nullIfNaN(pressure));
+        setHumidity(nullIfNaN(humidity));
+    }
+
+    private void readWind(JSONPullParser parser) {
+        if (parser.getEvent() != JSONPullParser.Event.START_OBJECT) {
+            parser.skipValue();
+            return;
+        }
+        double speed = Double.NaN, degree = Double.NaN;
+        while (parser.next() == JSONPullParser.Event.KEY) {
+            String key = parser.getString();
+            parser.next();
+            switch (key) {
+                case "speed":
+                    speed = readNumber(parser);
+                    break;
+                case "deg":
+                    degree = readNumber(parser);
+                    break;
+                default:
+                    parser.skipValue();
+            }
+        }
+        if (!Double.isNaN(speed)) {
+            setWindSpeed(speed);
+            setWindDirectionInDegrees(nullIfNaN(degree));
+        }
+    }
+
     /**
      * For generating test data
      */
@@ -55,14 +162,14 @@ public class ForecastConditions extends Conditions {
                        double windSpeed, double windDirectionInDegrees,
                        String weatherDescription, String weatherIconFile) {
         this.predictionTime = predictionTime;
-        this.minTemperature = minTemperature;
-        this.maxTemperature = maxTemperature;
-        this.cloudCoverage = cloudCoverage;
-        this.temperature = temperature;
-        this.pressure = pressure;
-        this.humidity = humidity;
-        this.windSpeed = windSpeed;
-        this.windDirectionInDegrees = windDirectionInDegrees;
+        setMinTemperature(minTemperature);
+        setMaxTemperature(maxTemperature);
+        setCloudCoverage(cloudCoverage);
+        setTemperature(temperature);
+        setPressure(pressure);
+        setHumidity(humidity);
+        setWindSpeed(windSpeed);
+        setWindDirectionInDegrees(windDirectionInDegrees);
         this.weatherDescription = weatherDescription;
         this.weatherIconFile = weatherIconFile;
     }
@@ -74,11 +181,36 @@ public class ForecastConditions extends Conditions {
         return predictionTime;
     }
 
+    private void setMinTemperature(Double minTemperature) {
+        if (minTemperature != null) {
+            this.minTemperature = minTemperature;
+            present |= MIN_TEMPERATURE;
+        }
+    }
+
+    private void setMaxTemperature(Double maxTemperature) {
+        if (maxTemperature != null) {
+            this.maxTemperature = maxTemperature;
+            present |= MAX_TEMPERATURE;
+        }
+    }
+
     /**
      * Gets the predicted minimum temperature in whatever unit the openWeatherConnection is set to (Default fahrenheit).
      * The min/max range around getTemperature() reflects uncertainty in the forecast.
      */
     public Double getMinTemperature() {
+        return hasMinTemperature() ? minTemperature : null;
+    }
+
+    public boolean hasMinTemperature() {
+        return (present & MIN_TEMPERATURE) != 0;
+    }
+
+    /**
+     * Same as getMinTemperature(), but returns NaN instead of null if there is no value.
+     */
+    public double minTemperatureAsDouble() {
         return minTemperature;
     }
 
@@ -87,34 +219,61 @@ public class ForecastConditions extends Conditions {
      * The min/max range around getTemperature() reflects uncertainty in the forecast.
      */
     public Double getMaxTemperature() {
+        return hasMaxTemperature() ? maxTemperature : null;
+    }
+
+    public boolean hasMaxTemperature() {
+        return (present & MAX_TEMPERATURE) != 0;
+    }
+
+    /**
+     * Same as getMaxTemperature(), but returns NaN instead of null if there is no value.
+     */
+    public double maxTemperatureAsDouble() {
         return maxTemperature;
     }
 
+    /**
+     * Widens the min/max range by delta on each side. Only called when the temperature is present.
+     */
     void addUncertainty(double delta) {
-        if (minTemperature == null) {
-            minTemperature = temperature;
+        if (!hasMinTemperature()) {
+            setMinTemperature(temperatureAsDouble());
         }
-        if (maxTemperature == null) {
-            maxTemperature = temperature;
+        if (!hasMaxTemperature()) {
+            setMaxTemperature(temperatureAsDouble());
         }
         minTemperature -= delta;
         maxTemperature += delta;
     }
 
+    /**
+     * Writes this forecast as a JSON object, in the form described at
+     * {@link WeatherData#writeJson(JSONStreamWriter)}.
+     */
+    public void writeJson(JSONStreamWriter out) {
+        out.object();
+        writeConditionsJson(out);
+        WeatherDataJson.writeTime(out, "predictionTime", predictionTime);
+        WeatherDataJson.writeNumber(out, "minTemperature", minTemperature);
+        WeatherDataJson.writeNumber(out, "maxTemperature", maxTemperature);
+        out.endObject();
+    }
+
     @Override
     public String toString() {
         return "ForecastConditions{"
-            + "predictionTime=" + predictionTime
-            + ", cloudCoverage=" + cloudCoverage
-            + ", temperature=" + temperature
-            + ", minTemperature=" + minTemperature
-            + ", maxTemperature=" + maxTemperature
-            + ", pressure=" + pressure
-            + ", humidity=" + humidity
-            + ", windSpeed=" + windSpeed
-            + ", windDirectionInDegrees=" + windDirectionInDegrees
-            + ", weatherDescription='" + weatherDescription + '\''
-            + ", weatherIconFile='" + weatherIconFile + '\''
+            + "predictionTime=" + getPredictionTime()
+            + ", cloudCoverage=" + getCloudCoverage()
+            + ", temperature=" + getTemperature()
+            + ", minTemperature=" + getMinTemperature()
+            + ", maxTemperature=" + getMaxTemperature()
+            + ", pressure=" + getPressure()
+            + ", humidity=" + getHumidity()
+            + ", windSpeed=" + getWindSpeed()
+            + ", windDirectionInDegrees=" + getWindDirectionInDegrees()
+            + ", weatherDescription='" + getWeatherDescription() + '\''
+            + ", weatherIconFile='" + weatherIconFile() + '\''
             + '}';
     }
 }
@@ -0,0 +1,482 @@
+package comp127.weather.api;
+
+import org.json.JSONStreamWriter;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Date;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A sequence of forecasts stored column by column: one array of prediction times, one array of
+ * temperatures, and so on. This takes several times less memory than a list of
+ * ForecastConditions, and lets code that scans many forecasts read the values it needs without
+ * allocating anything.
+ *
+ * Missing numbers are NaN, and a missing prediction time is {@link #NO_TIME}. The get() methods
+ * take the index of a forecast, in chronological order just like {@link WeatherData#getForecasts()}.
+ *
+ * For code that works with ForecastConditions objects, {@link #get(int)} and {@link #asList()}
+ * provide them as views, which read their values from the columns rather than copying them.
+ * Views of the same forecast are equal, though not the same object.
+ */
+public final class ForecastSeries {
+    /**
+     * The prediction time of a forecast that does not have one.
+     */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    // The least space one forecast takes in WeatherDiskCache's format: nine doubles, the
+    // prediction time, and the lengths of two empty strings
+    private static final int BYTES_PER_FORECAST = 9 * Double.BYTES + Long.BYTES + 2 * Integer.BYTES;
+
+    private final int size;
+    private final long[] predictionTimes;
+    private final double[]
+        temperatures,
+        minTemperatures,
+        maxTemperatures,
+        cloudCoverages,
+        pressures,
+        humidities,
+        windSpeeds,
+        windDirectionsInDegrees;
+    private final String[] weatherDescriptions, weatherIconFiles;
+
+    private ForecastSeries(int size) {
+        this.size = size;
+        predictionTimes = new long[size];
+        temperatures = new double[size];
+        minTemperatures = new double[size];
+        maxTemperatures = new double[size];
+        cloudCoverages = new double[size];
+        pressures = new double[size];
+        humidities = new double[size];
+        windSpeeds = new double[size];
+        windDirectionsInDegrees = new double[size];
+        weatherDescriptions = new String[size];
+        weatherIconFiles = new String[size];
+    }
+
+    /**
+     * Copies the values out of a list of forecasts.
+     */
+    public static ForecastSeries of(List<ForecastConditions> forecasts) {
+        ForecastSeries series = new ForecastSeries(forecasts.size());
+        for (int n = 0; n < series.size; n++) {
+            ForecastConditions forecast = forecasts.get(n);
+            Date predictionTime = forecast.getPredictionTime();
+            series.predictionTimes[n] = predictionTime != null ? predictionTime.getTime() : NO_TIME;
+            series.temperatures[n] = forecast.temperatureAsDouble();
+            series.minTemperatures[n] = forecast.minTemperatureAsDouble();
+            series.maxTemperatures[n] = forecast.maxTemperatureAsDouble();
+            series.cloudCoverages[n] = forecast.cloudCoverageAsDouble();
+            series.pressures[n] = forecast.pressureAsDouble();
+            series.humidities[n] = forecast.humidityAsDouble();
+            series.windSpeeds[n] = forecast.windSpeedAsDouble();
+            series.windDirectionsInDegrees[n] = forecast.windDirectionInDegreesAsDouble();
+            series.weatherDescriptions[n] = forecast.getWeatherDescription();
+            series.weatherIconFiles[n] = forecast.weatherIconFile();
+        }
+        return series;
+    }
+
+    /**
+     * For loading from WeatherDiskCache. Reads the format written by writeTo(), which is the same
+     * as a list of ForecastConditions.writeTo().
+     */
+    ForecastSeries(ByteBuffer in) {
+        this(WeatherDataCodec.readCount(in, BYTES_PER_FORECAST));
+        for (int n = 0; n < size; n++) {
+            cloudCoverages[n] = in.getDouble();
+            temperatures[n] = in.getDouble();
+            pressures[n] = in.getDouble();
+            humidities[n] = in.getDouble();
+            windSpeeds[n] = in.getDouble();
+            windDirectionsInDegrees[n] = in.getDouble();
+            weatherDescriptions[n] = WeatherDataCodec.readString(in);
+            weatherIconFiles[n] = WeatherDataCodec.readString(in);
+            predictionTimes[n] = in.getLong();
+            minTemperatures[n] = in.getDouble();
+            maxTemperatures[n] = in.getDouble();
+        }
+    }
+
+    /**
+     * For saving to WeatherDiskCache
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int n = 0; n < size; n++) {
+            out.writeDouble(cloudCoverages[n]);
+            out.writeDouble(temperatures[n]);
+            out.writeDouble(pressures[n]);
+            out.writeDouble(humidities[n]);
+            out.writeDouble(windSpeeds[n]);
+            out.writeDouble(windDirectionsInDegrees[n]);
+            WeatherDataCodec.writeString(out, weatherDescriptions[n]);
+            WeatherDataCodec.writeString(out, weatherIconFiles[n]);
+            out.writeLong(predictionTimes[n]);
+            out.writeDouble(minTemperatures[n]);
+            out.writeDouble(maxTemperatures[n]);
+        }
+    }
+
+    /**
+     * Writes the forecasts as a JSON array, straight from the columns. Each forecast is written
+     * just as {@link ForecastConditions#writeJson(JSONStreamWriter)} writes it.
+     */
+    public void writeJson(JSONStreamWriter out) {
+        out.array();
+        for (int n = 0; n < size; n++) {
+            writeJson(out, n);
+        }
+        out.endArray();
+    }
+
+    private void writeJson(JSONStreamWriter out, int index) {
+        out.object();
+        WeatherDataJson.writeNumber(out, "cloudCoverage", cloudCoverages[index]);
+        WeatherDataJson.writeNumber(out, "temperature", temperatures[index]);
+        WeatherDataJson.writeNumber(out, "pressure", pressures[index]);
+        WeatherDataJson.writeNumber(out, "humidity", humidities[index]);
+        WeatherDataJson.writeNumber(out, "windSpeed", windSpeeds[index]);
+        WeatherDataJson.writeNumber(out, "windDirectionInDegrees", windDirectionsInDegrees[index]);
+        WeatherDataJson.writeString(out, "weatherDescription", weatherDescriptions[index]);
+        out.key("weatherIcon").value(Conditions.iconPath(weatherIconFiles[index]));
+        WeatherDataJson.writeTime(out, "predictionTime", predictionTimes[index]);
+        WeatherDataJson.writeNumber(out, "minTemperature", minTemperatures[index]);
+        WeatherDataJson.writeNumber(out, "maxTemperature", maxTemperatures[index]);
+        out.endObject();
+    }
+
+    /**
+     * Increases each forecast's min/max temperature range to reflect forecast uncertainty, based
+     * on (1) range of nearby temperatures and (2) time in the future. OpenWeather mostly returns
+     * the same value for the min and max for forecast temperatures. This gives us something more
+     * interesting to display in a widget.
+     */
+    void addUncertainty() {
+        if (size == 0) {
+            return;
+        }
+        for (int n = 0; n < size; n++) {
+            if (predictionTimes[n] == NO_TIME || Double.isNaN(temperatures[n])) {
+                return;
+            }
+        }
+
+        double[] timeUncertainty = ForecastUncertainty.timeUncertainty(predictionTimes);
+        for (int n = 0; n < size; n++) {
+            addUncertainty(n, timeUncertainty[n]);
+        }
+        double[] spreadUncertainty = ForecastUncertainty.spreadUncertainty(predictionTimes, temperatures);
+        for (int n = 0; n < size; n++) {
+            addUncertainty(n, spreadUncertainty[n]);
+        }
+    }
+
+    private void addUncertainty(int index, double delta) {
+        if (Double.isNaN(minTemperatures[index])) {
+            minTemperatures[index] = temperatures[index];
+        }
+        if (Double.isNaN(maxTemperatures[index])) {
+            maxTemperatures[index] = temperatures[index];
+        }
+        minTemperatures[index] -= delta;
+        maxTemperatures[index] += delta;
+    }
+
+    /**
+     * The number of forecasts.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The prediction time in milliseconds since 1970, or NO_TIME if there is none.
+     */
+    public long getPredictionTimeMillis(int index) {
+        return predictionTimes[index];
+    }
+
+    public double getTemperature(int index) {
+        return temperatures[index];
+    }
+
+    public double getMinTemperature(int index) {
+        return minTemperatures[index];
+    }
+
+    public double getMaxTemperature(int index) {
+        return maxTemperatures[index];
+    }
+
+    public double getCloudCoverage(int index) {
+        return cloudCoverages[index];
+    }
+
+    public double getPressure(int index) {
+        return pressures[index];
+    }
+
+    public double getHumidity(int index) {
+        return humidities[index];
+    }
+
+    public double getWindSpeed(int index) {
+        return windSpeeds[index];
+    }
+
+    public double getWindDirectionInDegrees(int index) {
+        return windDirectionsInDegrees[index];
+    }
+
+    public String getWeatherDescription(int index) {
+        return weatherDescriptions[index];
+    }
+
+    /**
+     * The icon's file name as the API gives it (e.g. "01d"), without the path and extension that
+     * ForecastConditions.getWeatherIcon() adds.
+     */
+    public String getWeatherIconFile(int index) {
+        return weatherIconFiles[index];
+    }
+
+    /**
+     * The forecast at the given index as a ForecastConditions. This is a view of the series, not a
+     * copy: it holds only the series and the index, and reads each value from the columns when it
+     * is asked for. Each call returns a new view.
+     */
+    public ForecastConditions get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return new View(index);
+    }
+
+    /**
+     * An unmodifiable list of all the forecasts as ForecastConditions, made as needed by get().
+     */
+    public List<ForecastConditions> asList() {
+        return new ForecastList();
+    }
+
+    private class ForecastList extends AbstractList<ForecastConditions> implements RandomAccess {
+        @Override
+        public ForecastConditions get(int index) {
+            return ForecastSeries.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * One forecast of the series, as returned by get(). It overrides every accessor of
+     * ForecastConditions, so the fields it inherits are never set.
+     *
+     * This is public only so that reflection, such as new JSONObject(forecast), can call its
+     * methods.
+     */
+    public final class View extends ForecastConditions {
+        private final int index;
+
+        private View(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Date getPredictionTime() {
+            long millis = predictionTimes[index];
+            return millis != NO_TIME ? new Date(millis) : null;
+        }
+
+        @Override
+        public Double getCloudCoverage() {
+            return nullIfNaN(cloudCoverages[index]);
+        }
+
+        @Override
+        public boolean hasCloudCoverage() {
+            return !Double.isNaN(cloudCoverages[index]);
+        }
+
+        @Override
+        public double cloudCoverageAsDouble() {
+            return cloudCoverages[index];
+        }
+
+        @Override
+        public Double getTemperature() {
+            return nullIfNaN(temperatures[index]);
+        }
+
+        @Override
+        public boolean hasTemperature() {
+            return !Double.isNaN(temperatures[index]);
+        }
+
+        @Override
+        public double temperatureAsDouble() {
+            return temperatures[index];
+        }
+
+        @Override
+        public Double getMinTemperature() {
+            return nullIfNaN(minTemperatures[index]);
+        }
+
+        @Override
+        public boolean hasMinTemperature() {
+            return !Double.isNaN(minTemperatures[index]);
+        }
+
+        @Override
+        public double minTemperatureAsDouble() {
+            return minTemperatures[index];
+        }
+
+        @Override
+        public Double getMaxTemperature() {
+            return nullIfNaN(maxTemperatures[index]);
+        }
+
+        @Override
+        public boolean hasMaxTemperature() {
+            return !Double.isNaN(maxTemperatures[index]);
+        }
+
+        @Override
+        public double maxTemperatureAsDouble() {
+            return maxTemperatures[index];
+        }
+
+        @Override
+        public Double getPressure() {
+            return nullIfNaN(pressures[index]);
+        }
+
+        @Override
+        public boolean hasPressure() {
+            return !Double.isNaN(pressures[index]);
+        }
+
+        @Override
+        public double pressureAsDouble() {
+            return pressures[index];
+        }
+
+        @Override
+        public Double getHumidity() {
+            return nullIfNaN(humidities[index]);
+        }
+
+        @Override
+        public boolean hasHumidity() {
+            return !Double.isNaN(humidities[index]);
+        }
+
+        @Override
+        public double humidityAsDouble() {
+            return humidities[index];
+        }
+
+        @Override
+        public Double getWindSpeed() {
+            return nullIfNaN(windSpeeds[index]);
+        }
+
+        @Override
+        public boolean hasWindSpeed() {
+            return !Double.isNaN(windSpeeds[index]);
+        }
+
+        @Override
+        public double windSpeedAsDouble() {
+            return windSpeeds[index];
+        }
+
+        @Override
+        public Double getWindDirectionInDegrees() {
+            return nullIfNaN(windDirectionsInDegrees[index]);
+        }
+
+        @Override
+        public boolean hasWindDirection() {
+            return !Double.isNaN(windDirectionsInDegrees[index]);
+        }
+
+        @Override
+        public double windDirectionInDegreesAsDouble() {
+            return windDirectionsInDegrees[index];
+        }
+
+        @Override
+        public String getWindDirectionAsString() {
+            return hasWindDirection() ? compassDirection(windDirectionsInDegrees[index]) : null;
+        }
+
+        @Override
+        public String getWeatherDescription() {
+            return weatherDescriptions[index];
+        }
+
+        @Override
+        String weatherIconFile() {
+            return weatherIconFiles[index];
+        }
+
+        @Override
+        public String getWeatherIcon() {
+            return iconPath(weatherIconFiles[index]);
+        }
+
+        @Override
+        void addUncertainty(double delta) {
+            ForecastSeries.this.addUncertainty(index, delta);
+        }
+
+        @Override
+        public void writeJson(JSONStreamWriter out) {
+            ForecastSeries.this.writeJson(out, index);
+        }
+
+        private ForecastSeries series() {
+            return ForecastSeries.this;
+        }
+
+        /**
+         * Views of the same forecast are equal, so that code looking up a forecast it got earlier
+         * from the list, e.g. with indexOf(), finds it.
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof View)) {
+                return false;
+            }
+            View that = (View) o;
+            return series() == that.series() && index == that.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(ForecastSeries.this) * 31 + index;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+}
@@ -0,0 +1,45 @@
+package comp127.weather.api;
+
+import org.json.JSONPullParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes an OpenWeather hourly forecast response directly into ForecastConditions as it streams
+ * in, without first building the whole response as a String, a JSONObject tree, and an
+ * HourlyForecast.
+ */
+final class ForecastStreamReader {
+    private ForecastStreamReader() {
+    }
+
+    /**
+     * Reads the "list" of forecasts from a response body, skipping everything else.
+     */
+    static List<ForecastConditions> read(InputStream body) throws IOException {
+        try (JSONPullParser parser = new JSONPullParser(body)) {
+            parser.expect(JSONPullParser.Event.START_OBJECT);
+
+            List<ForecastConditions> forecasts = new ArrayList<>(40);
+            while (parser.next() == JSONPullParser.Event.KEY) {
+                String key = parser.getString();
+                parser.next();
+                if (key.equals("list") && parser.getEvent() == JSONPullParser.Event.START_ARRAY) {
+                    while (parser.next() != JSONPullParser.Event.END_ARRAY) {
+                        if (parser.getEvent() == JSONPullParser.Event.START_OBJECT) {
+                            forecasts.add(new ForecastConditions(parser));
+                        } else {
+                            parser.skipValue();
+                        }
+                    }
+                } else {
+                    parser.skipValue();
+                }
+            }
+            return forecasts;
+        }
+    }
+}
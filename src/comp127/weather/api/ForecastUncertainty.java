@@ -0,0 +1,108 @@
+package comp127.weather.api;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * The arithmetic behind ForecastSeries.addUncertainty(), on plain arrays of prediction times (in
+ * epoch milliseconds) and temperatures.
+ */
+final class ForecastUncertainty {
+    private static final long MILLIS_PER_HOUR = 3_600_000;
+
+    // Forecasts less than this far apart count as nearby
+    private static final long NEARBY_MILLIS = 6 * MILLIS_PER_HOUR;
+
+    private ForecastUncertainty() {
+    }
+
+    /**
+     * Uncertainty that grows with the square root of the time since the first forecast.
+     */
+    static double[] timeUncertainty(long[] times) {
+        double[] result = new double[times.length];
+        for (int n = 0; n < times.length; n++) {
+            result[n] = Math.sqrt(Math.abs(times[n] - times[0]) / (double) MILLIS_PER_HOUR) / 3;
+        }
+        return result;
+    }
+
+    /**
+     * Uncertainty from how much the temperature varies among each forecast's nearby forecasts
+     * (including itself): (max - min)^0.8.
+     *
+     * This slides a window along the forecasts in time order, keeping the candidates for the
+     * window's min and max in a pair of monotonic queues, so it takes linear time when the times
+     * are already sorted (as the API returns them), and n log n otherwise.
+     */
+    static double[] spreadUncertainty(long[] times, double[] temperatures) {
+        int count = times.length;
+        int[] order = timeOrder(times);
+
+        // Queues of indices into order, holding candidates for the window's max (temperatures
+        // decreasing) and min (temperatures increasing)
+        int[] maxQueue = new int[count], minQueue = new int[count];
+        int maxHead = 0, maxTail = 0, minHead = 0, minTail = 0;
+        int left = 0, right = 0, nanCount = 0;
+
+        double[] result = new double[count];
+        for (int k = 0; k < count; k++) {
+            long time = times[order[k]];
+
+            while (right < count && times[order[right]] - time < NEARBY_MILLIS) {
+                double temperature = temperatures[order[right]];
+                if (Double.isNaN(temperature)) {
+                    nanCount++;
+                } else {
+                    while (maxTail > maxHead && temperatures[order[maxQueue[maxTail - 1]]] <= temperature) {
+                        maxTail--;
+                    }
+                    maxQueue[maxTail++] = right;
+                    while (minTail > minHead && temperatures[order[minQueue[minTail - 1]]] >= temperature) {
+                        minTail--;
+                    }
+                    minQueue[minTail++] = right;
+                }
+                right++;
+            }
+            while (time - times[order[left]] >= NEARBY_MILLIS) {
+                if (Double.isNaN(temperatures[order[left]])) {
+                    nanCount--;
+                }
+                left++;
+            }
+            while (maxHead < maxTail && maxQueue[maxHead] < left) {
+                maxHead++;
+            }
+            while (minHead < minTail && minQueue[minHead] < left) {
+                minHead++;
+            }
+
+            // A NaN anywhere in the window poisons the min and max, as with Math.min/max
+            double spread = nanCount > 0
+                ? Double.NaN
+                : temperatures[order[maxQueue[maxHead]]] - temperatures[order[minQueue[minHead]]];
+            result[order[k]] = Math.pow(spread, 0.8);
+        }
+        return result;
+    }
+
+    /**
+     * Indices of times in increasing time order, keeping equal times in their original order.
+     */
+    private static int[] timeOrder(long[] times) {
+        for (int n = 1; n < times.length; n++) {
+            if (times[n] < times[n - 1]) {
+                return IntStream.range(0, times.length)
+                    .boxed()
+                    .sorted(Comparator.comparingLong(index -> times[index]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            }
+        }
+        int[] order = new int[times.length];
+        Arrays.setAll(order, n -> n);
+        return order;
+    }
+}
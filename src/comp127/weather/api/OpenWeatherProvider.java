@@ -4,10 +4,18 @@ import net.aksingh.owmjapis.OpenWeatherMap;
 
 import javax.swing.SwingUtilities;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Fetches weather data from the OpenWeather API.
@@ -24,16 +32,42 @@ public class OpenWeatherProvider {
 
     private static final String PROPERTIES_FILE = "/weather-display.properties";
 
-    private static String getApiKey() {
-        Properties props = new Properties();
-        try {
-            props.load(OpenWeatherProvider.class.getResourceAsStream(PROPERTIES_FILE));
-        } catch (Exception e) {
-            System.err.print("Unable to load " + PROPERTIES_FILE + ": ");
-            e.printStackTrace();
+    private static Properties properties;
+
+    /**
+     * Returns a setting from the properties file, or null if it is not set. The file is only read
+     * once.
+     */
+    static synchronized String getProperty(String name) {
+        if (properties == null) {
+            properties = new Properties();
+            try {
+                properties.load(OpenWeatherProvider.class.getResourceAsStream(PROPERTIES_FILE));
+            } catch (Exception e) {
+                System.err.print("Unable to load " + PROPERTIES_FILE + ": ");
+                e.printStackTrace();
+            }
         }
-        String result = props.getProperty("api.key");
-        if (result == null || result.isBlank()) {
+        String result = properties.getProperty(name);
+        return (result == null || result.isBlank()) ? null : result;
+    }
+
+    /**
+     * Creates an OpenWeatherMap for the configured API key, sending requests to api.url from
+     * weather-display.properties if that is set.
+     */
+    static OpenWeatherMap createOpenWeatherMap() {
+        OpenWeatherMap openWeather = new OpenWeatherMap(getApiKey());
+        String apiUrl = getProperty("api.url");
+        if (apiUrl != null) {
+            openWeather.setApiUrl(apiUrl);
+        }
+        return openWeather;
+    }
+
+    static String getApiKey() {
+        String result = getProperty("api.key");
+        if (result == null) {
             System.err.println();
             System.err.println("ERROR: No api.key in res" + PROPERTIES_FILE);
             System.err.println("       Please see README to configure the API key");
@@ -43,15 +77,23 @@ public class OpenWeatherProvider {
         return result;
     }
 
-    // There are two (well 4, but I'm not implementing all that) ways to specify where where you want
-    // weather for. if cityName & stateName are non-null we will use those for every api call, otherwise we
-    // will use lat/long.
-    private final String cityName, countryCode;
-    private final Double lat, lng;
+    private final WeatherLocation location;
 
     private final OpenWeatherMap openWeather;
 
-    private static final ExecutorService requestQueue = Executors.newSingleThreadExecutor();
+    private FetchPolicy fetchPolicy = new FetchPolicy();
+    private WeatherCache cache = WeatherCache.shared();
+    private WeatherDiskCache diskCache;
+    private boolean showedSavedWeather;
+    private final WeatherPublisher updates = new WeatherPublisher();
+
+    // Each fetch issues two independent requests, so this needs more than one thread for them to
+    // actually run side by side. Idle pool threads are reclaimed after a minute.
+    private static volatile ExecutorService requestQueue = ExecutionMode.fromProperties().newExecutor();
+
+    // Identical requests that are already in flight are shared rather than sent again
+    private static final SingleFlight<RequestKey, CurrentWeatherStreamReader.Result> currentConditionsInFlight = new SingleFlight<>();
+    private static final SingleFlight<RequestKey, ForecastSeries> forecastsInFlight = new SingleFlight<>();
 
     /**
      * Creates a provider that will return weather for a given city.
@@ -60,10 +102,8 @@ public class OpenWeatherProvider {
      * @param countryCode The two-letter country code for the country you want to get weather from
      */
     public OpenWeatherProvider(String cityName, String countryCode) {
-        openWeather = new OpenWeatherMap(getApiKey());
-        this.cityName = cityName;
-        this.countryCode = countryCode;
-        this.lat = this.lng = null;
+        openWeather = createOpenWeatherMap();
+        location = WeatherLocation.ofCity(cityName, countryCode);
         setUnitsImperial();
     }
 
@@ -71,13 +111,44 @@ public class OpenWeatherProvider {
      * Creates a provider that will return weather for an arbitrary location.
      */
     public OpenWeatherProvider(double latitude, double longitude) {
-        openWeather = new OpenWeatherMap(getApiKey());
-        this.lat = latitude;
-        this.lng = longitude;
-        this.cityName = this.countryCode = null;
+        openWeather = createOpenWeatherMap();
+        location = WeatherLocation.ofCoordinates(latitude, longitude);
         setUnitsImperial();
     }
 
+    /**
+     * Creates a provider that sends requests with the given API key to apiUrl, without reading
+     * weather-display.properties. For tests against a local stand-in for the server.
+     */
+    OpenWeatherProvider(String apiKey, String apiUrl, WeatherLocation location) {
+        openWeather = new OpenWeatherMap(apiKey);
+        openWeather.setApiUrl(apiUrl);
+        this.location = location;
+        setUnitsImperial();
+    }
+
+    /**
+     * Sends this provider's requests to a different server, such as a local stand-in for testing.
+     * See {@link OpenWeatherMap#setApiUrl(String)}.
+     */
+    public void setApiUrl(String apiUrl) {
+        openWeather.setApiUrl(apiUrl);
+    }
+
+    /**
+     * Changes which threads all providers use to wait for the server. Requests already in progress
+     * carry on with the new threads for their remaining steps, and the old threads are shut down
+     * once they finish what they are doing. The default comes from execution.mode in
+     * weather-display.properties, or is {@link ExecutionMode#THREAD_POOL} if that is not set.
+     *
+     * Callbacks passed to fetchWeather() still run on the Swing event thread in every mode.
+     */
+    public static synchronized void setExecutionMode(ExecutionMode mode) {
+        ExecutorService previous = requestQueue;
+        requestQueue = mode.newExecutor();
+        previous.shutdown();
+    }
+
     /**
      * Set the interface to use fahrenheit and miles
      */
@@ -93,32 +164,244 @@ public class OpenWeatherProvider {
     }
 
     /**
-     * Fetches up-to-date weather data from the server. Runs completionCallback if the
-     * request succeeds.
+     * The API call limits this provider is subject to. They are shared with every other provider
+     * using the same API key.
      */
-    public void fetchWeather(Consumer<WeatherData> completionCallback) {
-        requestQueue.submit(() -> {
-            try {
-                WeatherData result = new WeatherData(
-                    fetch("current conditions",
-                        openWeather::currentWeatherByCityName,
-                        openWeather::currentWeatherByCoordinates),
-                    fetch("hourly forecast",
-                        openWeather::hourlyForecastByCityName,
-                        openWeather::hourlyForecastByCoordinates));
+    public ApiQuota getQuota() {
+        return ApiQuota.forApiKey(openWeather.getApiKey());
+    }
+
+    /**
+     * Every weather update this provider receives from now on: each successful fetchWeather()
+     * result, including saved weather shown at startup. Pair this with a WeatherRefreshScheduler to
+     * keep updates coming.
+     */
+    public Flow.Publisher<WeatherData> updates() {
+        return updates;
+    }
+
+    /**
+     * Sets how long to wait for the server and how often to retry. See {@link FetchPolicy} for the
+     * defaults.
+     */
+    public void setFetchPolicy(FetchPolicy fetchPolicy) {
+        this.fetchPolicy = Objects.requireNonNull(fetchPolicy);
+    }
+
+    /**
+     * Sets where this provider remembers recent results. By default, all providers share
+     * {@link WeatherCache#shared()}. Pass null to always go to the server.
+     */
+    public void setCache(WeatherCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets where this provider saves the latest weather on disk, or null (the default) to not save
+     * it. Saved weather lets fetchWeather() show something right away when the program starts.
+     */
+    public void setDiskCache(WeatherDiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * Fetches up-to-date weather data, from the cache if it is recent enough and otherwise from
+     * the server. Runs completionCallback if the request succeeds.
+     *
+     * If there is a disk cache and this is the first fetch, completionCallback first runs with the
+     * saved weather from the last run (if any), and then again when the up-to-date data arrives.
+     * The same data also goes to every subscriber of updates().
+     *
+     * @return The request, for callers that want to know when it finishes or whether it failed.
+     *         It completes before completionCallback runs.
+     */
+    public CompletableFuture<WeatherData> fetchWeather(Consumer<WeatherData> completionCallback) {
+        return fetchWeather(completionCallback, false);
+    }
 
-                System.out.println("Got weather data: " + result);
+    /**
+     * Like fetchWeather(Consumer), but if bypassCache is true, always goes to the server. The
+     * result still replaces what is in the cache.
+     */
+    CompletableFuture<WeatherData> fetchWeather(Consumer<WeatherData> completionCallback, boolean bypassCache) {
+        CompletableFuture<WeatherData> request = fetchWeatherAsync(bypassCache);
 
+        if (diskCache != null && !showedSavedWeather && !request.isDone()) {
+            showedSavedWeather = true;
+            WeatherData saved = diskCache.load(cacheKey());
+            if (saved != null) {
+                System.out.println("Showing saved weather data until the update arrives");
+                updates.publish(saved);
                 SwingUtilities.invokeLater(() ->
-                    completionCallback.accept(result));
-            } catch (WeatherException e) {
-                System.out.println("Unable to fetch weather: " + e);
+                    completionCallback.accept(saved));
+            }
+        }
+
+        request.whenComplete((result, error) -> {
+            if (error != null) {
+                System.out.println("Unable to fetch weather: " + asWeatherException(error));
+                return;
             }
+
+            System.out.println("Got weather data: " + result);
+            updates.publish(result);
+
+            SwingUtilities.invokeLater(() ->
+                completionCallback.accept(result));
         });
+        return request;
     }
 
-    private <T> T fetch(
+    /**
+     * Fetches up-to-date weather data, requesting current conditions and the hourly forecast from
+     * the server at the same time. Recent results come from the cache instead (see setCache()).
+     *
+     * If only one of the two requests fails, the future still completes normally with whatever
+     * data did arrive, and {@link WeatherData#getFailures()} reports what went wrong. The future
+     * completes exceptionally with a WeatherException only if both requests fail.
+     *
+     * Note that the future does not complete on the Swing event thread.
+     */
+    public CompletableFuture<WeatherData> fetchWeatherAsync() {
+        return fetchWeatherAsync(false);
+    }
+
+    private CompletableFuture<WeatherData> fetchWeatherAsync(boolean bypassCache) {
+        WeatherCache.Key key = cacheKey();
+        WeatherDiskCache diskCache = this.diskCache;
+        FetchPolicy fetchPolicy = this.fetchPolicy;
+        Supplier<CompletableFuture<WeatherData>> fetchFromServer = () -> {
+            CompletableFuture<WeatherData> result = fetchWeatherAsync(openWeather, location, fetchPolicy);
+            if (diskCache == null) {
+                return result;
+            }
+            return result.thenApply(data -> {
+                if (data.getFailures().isEmpty()) {
+                    diskCache.save(key, data);
+                }
+                return data;
+            });
+        };
+        if (cache == null) {
+            return fetchFromServer.get();
+        }
+        return bypassCache ? cache.reload(key, fetchFromServer) : cache.get(key, fetchFromServer);
+    }
+
+    private WeatherCache.Key cacheKey() {
+        return new WeatherCache.Key(location, openWeather.getUnits(), openWeather.getApiUrl());
+    }
+
+    /**
+     * Like fetchWeatherAsync(OpenWeatherMap, WeatherLocation, FetchPolicy), but answers from the
+     * cache when it can. The cache may be null.
+     */
+    static CompletableFuture<WeatherData> fetchWeatherAsync(
+            OpenWeatherMap openWeather,
+            WeatherLocation location,
+            FetchPolicy fetchPolicy,
+            WeatherCache cache) {
+
+        if (cache == null) {
+            return fetchWeatherAsync(openWeather, location, fetchPolicy);
+        }
+        return cache.get(
+            new WeatherCache.Key(location, openWeather.getUnits(), openWeather.getApiUrl()),
+            () -> fetchWeatherAsync(openWeather, location, fetchPolicy));
+    }
+
+    /**
+     * Does the work of fetchWeatherAsync() for any location, so that callers such as
+     * WeatherBatchProvider can share a single OpenWeatherMap across many locations.
+     */
+    static CompletableFuture<WeatherData> fetchWeatherAsync(
+            OpenWeatherMap openWeather,
+            WeatherLocation location,
+            FetchPolicy fetchPolicy) {
+
+        CompletableFuture<CurrentWeatherStreamReader.Result> current =
+            fetchAsync("current conditions", openWeather, location, fetchPolicy, currentConditionsInFlight,
+                (city, country) -> openWeather.currentWeatherByCityName(city, country, CurrentWeatherStreamReader::read),
+                (lat, lng) -> openWeather.currentWeatherByCoordinates(lat, lng, CurrentWeatherStreamReader::read));
+        CompletableFuture<ForecastSeries> forecast =
+            fetchAsync("hourly forecast", openWeather, location, fetchPolicy, forecastsInFlight,
+                (city, country) -> openWeather.hourlyForecastByCityName(city, country, OpenWeatherProvider::readForecasts),
+                (lat, lng) -> openWeather.hourlyForecastByCoordinates(lat, lng, OpenWeatherProvider::readForecasts));
+
+        return CompletableFuture.allOf(current, forecast).handle((ignored, anyError) -> {
+            List<WeatherException> failures = new ArrayList<>();
+            CurrentWeatherStreamReader.Result currentResult = resultOrFailure(current, failures);
+            ForecastSeries forecastResult = resultOrFailure(forecast, failures);
+            if (currentResult == null && forecastResult == null) {
+                WeatherException error = failures.get(0);
+                for (WeatherException other : failures.subList(1, failures.size())) {
+                    error.addSuppressed(other);
+                }
+                throw new CompletionException(error);
+            }
+            return new WeatherData(currentResult, forecastResult, failures);
+        });
+    }
+
+    private static <T> CompletableFuture<T> fetchAsync(
+            String requestName,
+            OpenWeatherMap openWeather,
+            WeatherLocation location,
+            FetchPolicy fetchPolicy,
+            SingleFlight<RequestKey, T> inFlight,
+            APIRequest<String, String, T> cityRequest,
+            APIRequest<Float, Float, T> coordinateRequest) {
+
+        String apiUrl = openWeather.getApiUrl();
+        RequestKey key = new RequestKey(location, openWeather.getUnits(), apiUrl, requestName);
+        ApiQuota quota = ApiQuota.forApiKey(openWeather.getApiKey());
+        // Each server gets its own circuit breaker, so a failing test server does not stop
+        // requests to the real one
+        String upstream = requestName + " from " + apiUrl;
+        return inFlight.run(key, () ->
+            fetchPolicy.execute(upstream, quota, () -> requestQueue, () ->
+                fetch(requestName, location, cityRequest, coordinateRequest)));
+    }
+
+    /**
+     * Decodes a forecast response and adds uncertainty to it. This happens here, before the
+     * forecasts can be shared between callers, because adding uncertainty modifies them.
+     */
+    private static ForecastSeries readForecasts(InputStream body) throws IOException {
+        ForecastSeries forecasts = ForecastSeries.of(ForecastStreamReader.read(body));
+        forecasts.addUncertainty();
+        return forecasts;
+    }
+
+    /**
+     * Returns the result of an already-completed future, or records its failure and returns null.
+     */
+    private static <T> T resultOrFailure(CompletableFuture<T> future, List<WeatherException> failures) {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            failures.add(asWeatherException(e));
+            return null;
+        }
+    }
+
+    /**
+     * Unwraps the CompletionException layers that CompletableFuture adds, and converts anything
+     * else (such as a JSON parse error) into a WeatherException.
+     */
+    static WeatherException asWeatherException(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof WeatherException) {
+            return (WeatherException) error;
+        }
+        return new WeatherException("Weather API request failed", error);
+    }
+
+    private static <T> T fetch(
             String requestName,
+            WeatherLocation location,
             APIRequest<String, String, T> cityRequest,
             APIRequest<Float, Float, T> coordinateRequest)
         throws WeatherException {
@@ -126,10 +409,11 @@ public class OpenWeatherProvider {
         System.out.println("Updating " + requestName + " ...");
         T result;
         try {
-            if (usingCityName()) {
-                result = cityRequest.request(cityName, countryCode);
+            if (location.usesCityName()) {
+                result = cityRequest.request(location.getCityName(), location.getCountryCode());
             } else {
-                result = coordinateRequest.request(lat.floatValue(), lng.floatValue());
+                result = coordinateRequest.request(
+                    (float) location.getLatitude(), (float) location.getLongitude());
             }
         } catch (IOException ex) {
             throw new WeatherException("Weather API request failed", ex);
@@ -142,16 +426,41 @@ public class OpenWeatherProvider {
     }
 
     /**
-     * Returns true if we should use the city name to fetch weather info.
+     * Identifies one kind of API request for one place on one server, so identical requests can be
+     * shared.
      */
-    private boolean usingCityName() {
-        if (cityName != null && countryCode != null) {
-            return true;
+    private static final class RequestKey {
+        private final WeatherLocation location;
+        private final OpenWeatherMap.Units units;
+        private final String apiUrl;
+        private final String endpoint;
+
+        RequestKey(WeatherLocation location, OpenWeatherMap.Units units, String apiUrl, String endpoint) {
+            this.location = location;
+            this.units = units;
+            this.apiUrl = apiUrl;
+            this.endpoint = endpoint;
         }
-        if (lat != null && lng != null) {
-            return false;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RequestKey)) {
+                return false;
+            }
+            RequestKey that = (RequestKey) o;
+            return location.equals(that.location)
+                && units == that.units
+                && apiUrl.equals(that.apiUrl)
+                && endpoint.equals(that.endpoint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(location, units, apiUrl, endpoint);
         }
-        throw new IllegalStateException("Insufficient location information");
     }
 
     private interface APIRequest<Arg0, Arg1, Data> {
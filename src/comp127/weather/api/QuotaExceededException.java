@@ -0,0 +1,25 @@
+package comp127.weather.api;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a request would go over the API key’s call limits, and waiting for room under the
+ * limit would take longer than the quota allows.
+ *
+ * @see ApiQuota
+ */
+public class QuotaExceededException extends WeatherException {
+    private final Duration retryAfter;
+
+    public QuotaExceededException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Roughly how long until a request would be allowed again.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,52 @@
+package comp127.weather.api;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent callers asking for the same thing share a single request. While a request for a
+ * key is in flight, anyone else asking for that key gets the same result (or failure) instead of
+ * starting a request of their own. Once it finishes, the next caller starts a new one.
+ *
+ * Results are shared between callers, so they must not be modified.
+ */
+class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Joins the in-flight request for key, or starts one by calling request if there is none.
+     * Each caller gets its own copy of the future, so cancelling it does not affect the others.
+     */
+    CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> request) {
+        CompletableFuture<V> shared = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, shared);
+        if (existing != null) {
+            return existing.copy();
+        }
+
+        try {
+            request.get().whenComplete((result, error) -> {
+                // Remove before completing, so that anyone who sees the result and asks again
+                // starts a fresh request
+                inFlight.remove(key, shared);
+                if (error != null) {
+                    shared.completeExceptionally(error);
+                } else {
+                    shared.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, shared);
+            shared.completeExceptionally(e);
+        }
+        return shared.copy();
+    }
+
+    /**
+     * The number of distinct requests currently in flight.
+     */
+    int size() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,254 @@
+package comp127.weather.api;
+
+import net.aksingh.owmjapis.OpenWeatherMap;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Fetches weather for many locations at once from the OpenWeather API.
+ *
+ * Unlike OpenWeatherProvider, which is tied to a single location, one of these objects can fetch
+ * weather for any number of locations while sharing a single API connection. At most
+ * {@link #setParallelism(int) parallelism} locations are in flight at any time; the rest wait
+ * their turn. Results are delivered in the order they complete, not the order of the locations.
+ */
+public class WeatherBatchProvider {
+    private final OpenWeatherMap openWeather;
+
+    private int parallelism = 8;
+    private Duration requestTimeout = Duration.ofSeconds(30);
+    private FetchPolicy fetchPolicy = new FetchPolicy();
+    private WeatherCache cache;
+
+    /**
+     * Creates a batch provider using the API key from weather-display.properties.
+     */
+    public WeatherBatchProvider() {
+        openWeather = OpenWeatherProvider.createOpenWeatherMap();
+        setUnitsImperial();
+    }
+
+    /**
+     * Set the interface to use fahrenheit and miles
+     */
+    public void setUnitsImperial() {
+        openWeather.setUnits(OpenWeatherMap.Units.IMPERIAL);
+    }
+
+    /**
+     * Set the interface to use celsius and meters
+     */
+    public void setUnitsMetric() {
+        openWeather.setUnits(OpenWeatherMap.Units.METRIC);
+    }
+
+    /**
+     * The maximum number of locations to fetch at the same time. Defaults to 8.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1, got " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * How long to wait for the weather at a single location before reporting it as failed. The
+     * clock starts when that location's requests are sent, not when the batch starts. Defaults
+     * to 30 seconds.
+     *
+     * A location that times out still counts against the parallelism until its requests give up,
+     * which the fetch policy's deadline bounds.
+     */
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Sets how long to wait for each request to the server and how often to retry it. The request
+     * timeout above still bounds the total time per location.
+     */
+    public void setFetchPolicy(FetchPolicy fetchPolicy) {
+        this.fetchPolicy = Objects.requireNonNull(fetchPolicy);
+    }
+
+    /**
+     * Sets where this provider remembers recent results. Unlike OpenWeatherProvider, a batch
+     * provider does not use a cache unless you give it one: a fleet refresh usually wants fresh
+     * data for every site, and would push everything else out of a cache shared with other
+     * providers.
+     */
+    public void setCache(WeatherCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Fetches weather for all the given locations, passing each result to resultCallback as soon
+     * as it arrives. The callback runs on a background thread, never the Swing event thread, and
+     * may be called from several threads at once.
+     *
+     * @return A future that completes after every location's result has been delivered.
+     */
+    public CompletableFuture<Void> fetchAll(Collection<WeatherLocation> locations, Consumer<Result> resultCallback) {
+        List<WeatherLocation> pending = List.copyOf(locations);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (pending.isEmpty()) {
+            done.complete(null);
+            return done;
+        }
+
+        Batch batch = new Batch(pending, resultCallback, done);
+        for (int n = 0; n < Math.min(parallelism, pending.size()); n++) {
+            batch.startNext();
+        }
+        return done;
+    }
+
+    /**
+     * Fetches weather for all the given locations, returning a stream of the results in the order
+     * they arrive. Reading from the stream blocks until the next result is available.
+     */
+    public Stream<Result> streamAll(Collection<WeatherLocation> locations) {
+        BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+        fetchAll(locations, results::add);
+        return Stream.generate(() -> {
+            try {
+                return results.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for weather", e);
+            }
+        }).limit(locations.size());
+    }
+
+    /**
+     * Hands out locations one at a time, starting the next one each time a previous one finishes,
+     * so that no more than `parallelism` are ever in flight.
+     */
+    private class Batch {
+        private final Iterator<WeatherLocation> pending;
+        private final Consumer<Result> resultCallback;
+        private final CompletableFuture<Void> done;
+        private final AtomicInteger remaining;
+
+        // Counts calls to startNext() not yet acted on; whoever raises it from zero starts them all
+        private final AtomicInteger starts = new AtomicInteger();
+
+        Batch(List<WeatherLocation> locations, Consumer<Result> resultCallback, CompletableFuture<Void> done) {
+            this.pending = locations.iterator();
+            this.resultCallback = resultCallback;
+            this.done = done;
+            this.remaining = new AtomicInteger(locations.size());
+        }
+
+        /**
+         * Starts the next location, if there is one. A request that is already complete when it
+         * is made, such as a cache hit or one refused by an open circuit breaker, calls this again
+         * from inside startOne(); that call only counts the start, and the loop here makes it, so
+         * the stack does not grow with the number of locations.
+         */
+        void startNext() {
+            if (starts.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                startOne();
+                missed = starts.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void startOne() {
+            WeatherLocation location;
+            synchronized (pending) {
+                if (!pending.hasNext()) {
+                    return;
+                }
+                location = pending.next();
+            }
+
+            CompletableFuture<WeatherData> request;
+            try {
+                request = OpenWeatherProvider.fetchWeatherAsync(openWeather, location, fetchPolicy, cache);
+            } catch (RuntimeException e) {
+                request = CompletableFuture.failedFuture(e);
+            }
+
+            // The timeout only gives up waiting; the request itself carries on until its fetch
+            // policy ends it. Its slot stays taken until then, so a location that times out does
+            // not let another one start alongside it.
+            request.copy()
+                .orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((data, error) -> {
+                    try {
+                        resultCallback.accept(
+                            error == null
+                                ? new Result(location, data, null)
+                                : new Result(location, null, OpenWeatherProvider.asWeatherException(error)));
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            done.complete(null);
+                        }
+                    }
+                });
+            request.whenComplete((data, error) -> startNext());
+        }
+    }
+
+    /**
+     * The outcome of fetching weather for one location in a batch: either weather data or the
+     * reason it could not be fetched.
+     */
+    public static class Result {
+        private final WeatherLocation location;
+        private final WeatherData weatherData;
+        private final WeatherException failure;
+
+        Result(WeatherLocation location, WeatherData weatherData, WeatherException failure) {
+            this.location = location;
+            this.weatherData = weatherData;
+            this.failure = failure;
+        }
+
+        public WeatherLocation getLocation() {
+            return location;
+        }
+
+        /**
+         * The weather at this location, or null if it could not be fetched.
+         */
+        public WeatherData getWeatherData() {
+            return weatherData;
+        }
+
+        /**
+         * What went wrong, or null if the fetch succeeded.
+         */
+        public WeatherException getFailure() {
+            return failure;
+        }
+
+        public boolean isSuccess() {
+            return failure == null;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{"
+                + "location=" + location
+                + (isSuccess() ? ", weatherData=" + weatherData : ", failure=" + failure)
+                + '}';
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package comp127.weather.api;
+
+import net.aksingh.owmjapis.OpenWeatherMap;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Remembers recently fetched weather so that repeated requests for the same place don't all go to
+ * the network. OpenWeather only updates its data every 10 minutes or so, so there is no point in
+ * asking more often than that.
+ *
+ * Entries are fresh for the time to live, and are then served stale for up to a further
+ * stale-while-revalidate period while a new copy is fetched in the background. When the cache is
+ * full, the least recently used entry is dropped. Only complete weather data is cached; results
+ * with failures are passed through but never stored.
+ */
+public class WeatherCache {
+    private static final WeatherCache shared =
+        new WeatherCache(256, Duration.ofMinutes(10), Duration.ofMinutes(30));
+
+    /**
+     * The cache that OpenWeatherProvider uses by default.
+     */
+    public static WeatherCache shared() {
+        return shared;
+    }
+
+    private final int maxEntries;
+    private final long timeToLiveMillis;
+    private final long staleWhileRevalidateMillis;
+
+    private final Map<Key, Entry> entries;
+
+    private final AtomicLong
+        hits = new AtomicLong(),
+        staleHits = new AtomicLong(),
+        misses = new AtomicLong();
+
+    /**
+     * @param maxEntries The most locations to remember at once.
+     * @param timeToLive How long fetched weather counts as up to date.
+     * @param staleWhileRevalidate How long past its time to live an entry may still be returned
+     *                             while a fresh copy is fetched in the background.
+     */
+    public WeatherCache(int maxEntries, Duration timeToLive, Duration staleWhileRevalidate) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1, got " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLiveMillis = timeToLive.toMillis();
+        this.staleWhileRevalidateMillis = staleWhileRevalidate.toMillis();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > WeatherCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns cached weather for the given key if there is any usable, otherwise calls loader to
+     * fetch it and remembers the result.
+     */
+    CompletableFuture<WeatherData> get(Key key, Supplier<CompletableFuture<WeatherData>> loader) {
+        long now = System.currentTimeMillis();
+        Entry entry;
+        boolean stale = false, revalidate = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null) {
+                long age = now - entry.fetchedAt;
+                if (age >= timeToLiveMillis + staleWhileRevalidateMillis) {
+                    entry = null;
+                } else if (age >= timeToLiveMillis) {
+                    stale = true;
+                    if (!entry.revalidating) {
+                        entry.revalidating = true;
+                        revalidate = true;
+                    }
+                }
+            }
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return load(key, loader);
+        }
+
+        if (stale) {
+            staleHits.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        if (revalidate) {
+            Entry staleEntry = entry;
+            load(key, loader).whenComplete((data, error) -> {
+                synchronized (entries) {
+                    staleEntry.revalidating = false;
+                }
+            });
+        }
+        return CompletableFuture.completedFuture(entry.data);
+    }
+
+    /**
+     * Calls loader to fetch new weather whatever is cached, and remembers the result. For callers
+     * that need to know whether the server can be reached, such as WeatherRefreshScheduler.
+     */
+    CompletableFuture<WeatherData> reload(Key key, Supplier<CompletableFuture<WeatherData>> loader) {
+        misses.incrementAndGet();
+        return load(key, loader);
+    }
+
+    private CompletableFuture<WeatherData> load(Key key, Supplier<CompletableFuture<WeatherData>> loader) {
+        return loader.get().thenApply(data -> {
+            if (data.getFailures().isEmpty()) {
+                put(key, data);
+            }
+            return data;
+        });
+    }
+
+    void put(Key key, WeatherData data) {
+        synchronized (entries) {
+            entries.put(key, new Entry(data, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Forgets everything. Does not reset the counters.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * The number of locations currently remembered.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * The number of requests answered with fresh cached data.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * The number of requests answered with stale cached data while fresh data was fetched.
+     */
+    public long getStaleHitCount() {
+        return staleHits.get();
+    }
+
+    /**
+     * The number of requests that had to wait for the network.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherCache{"
+            + "size=" + size()
+            + ", hits=" + hits
+            + ", staleHits=" + staleHits
+            + ", misses=" + misses
+            + '}';
+    }
+
+    private static class Entry {
+        private final WeatherData data;
+        private final long fetchedAt;
+        private boolean revalidating;
+
+        Entry(WeatherData data, long fetchedAt) {
+            this.data = data;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * Identifies one cached result: the weather at a location, in a particular set of units, from
+     * a particular server.
+     */
+    static final class Key {
+        private final WeatherLocation location;
+        private final OpenWeatherMap.Units units;
+        private final String apiUrl;
+
+        Key(WeatherLocation location, OpenWeatherMap.Units units, String apiUrl) {
+            this.location = location;
+            this.units = units;
+            this.apiUrl = apiUrl;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return location.equals(that.location) && units == that.units && apiUrl.equals(that.apiUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(location, units, apiUrl);
+        }
+
+        @Override
+        public String toString() {
+            return location + " in " + units + " from " + apiUrl;
+        }
+    }
+}
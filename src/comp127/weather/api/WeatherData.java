@@ -2,9 +2,11 @@ package comp127.weather.api;
 
 import net.aksingh.owmjapis.CurrentWeather;
 import net.aksingh.owmjapis.HourlyForecast;
+import org.json.JSONStreamWriter;
 
-import java.util.Collections;
-import java.util.DoubleSummaryStatistics;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import static java.util.stream.Collectors.toList;
@@ -16,24 +18,103 @@ public class WeatherData {
     private String cityName;
     private final CurrentConditions currentConditions;
 
-    private final List<ForecastConditions> hourlyForecasts;
+    private final ForecastSeries hourlyForecasts;
+
+    private final List<WeatherException> failures;
 
     /**
      * For getting API results
      */
     WeatherData(CurrentWeather rawCurrentConditions, HourlyForecast hourlyForecast) {
-        if (rawCurrentConditions != null) {
-            cityName = Conditions.nullIfBlank(rawCurrentConditions.getCityName());
-            currentConditions = new CurrentConditions(rawCurrentConditions);
-        } else {
-            currentConditions = CurrentConditions.BLANK;
-        }
-        this.hourlyForecasts =
+        this(
+            Conditions.nullIfBlank(rawCurrentConditions.getCityName()),
+            new CurrentConditions(rawCurrentConditions),
+            toForecastConditions(hourlyForecast),
+            List.of());
+    }
+
+    private static ForecastSeries toForecastConditions(HourlyForecast hourlyForecast) {
+        ForecastSeries forecasts = ForecastSeries.of(
             hourlyForecast
                 .getForecasts().stream()
                 .map(ForecastConditions::new)
-                .collect(toList());
-        addUncertainty(hourlyForecasts);
+                .collect(toList()));
+        forecasts.addUncertainty();
+        return forecasts;
+    }
+
+    /**
+     * For getting API results when the responses were decoded directly as they streamed in,
+     * possibly with some of the requests failed. Either current or hourlyForecasts may be null, in
+     * which case the corresponding part of the data is left blank.
+     *
+     * The forecasts must already have had addUncertainty() applied, and are not copied, so they
+     * may be shared between several WeatherData objects.
+     */
+    WeatherData(CurrentWeatherStreamReader.Result current, ForecastSeries hourlyForecasts, List<WeatherException> failures) {
+        this(
+            current != null ? current.getCityName() : null,
+            current != null ? current.getConditions() : CurrentConditions.BLANK,
+            hourlyForecasts != null ? hourlyForecasts : ForecastSeries.of(List.of(ForecastConditions.BLANK)),
+            failures);
+    }
+
+    private WeatherData(
+            String cityName,
+            CurrentConditions currentConditions,
+            ForecastSeries hourlyForecasts,
+            List<WeatherException> failures) {
+        this.cityName = cityName;
+        this.currentConditions = currentConditions;
+        this.hourlyForecasts = hourlyForecasts;
+        this.failures = List.copyOf(failures);
+    }
+
+    /**
+     * For loading from WeatherDiskCache. The saved forecasts already include uncertainty.
+     */
+    WeatherData(ByteBuffer in) {
+        cityName = WeatherDataCodec.readString(in);
+        currentConditions = new CurrentConditions(in);
+        hourlyForecasts = new ForecastSeries(in);
+        failures = List.of();
+    }
+
+    /**
+     * For saving to WeatherDiskCache
+     */
+    void writeTo(DataOutput out) throws IOException {
+        WeatherDataCodec.writeString(out, cityName);
+        currentConditions.writeTo(out);
+        hourlyForecasts.writeTo(out);
+    }
+
+    /**
+     * Writes this weather as a JSON object, without building a JSONObject tree:
+     *
+     * <pre>
+     * {"cityName": ..., "currentConditions": {...}, "forecasts": [{...}, ...], "failures": [...]}
+     * </pre>
+     *
+     * Conditions have the keys cloudCoverage, temperature, pressure, humidity, windSpeed,
+     * windDirectionInDegrees, weatherDescription and weatherIcon, plus sunriseTime and sunsetTime
+     * for current conditions, and predictionTime, minTemperature and maxTemperature for forecasts.
+     * Times are in milliseconds since 1970. Missing values are left out. Failures are written as
+     * their messages.
+     */
+    public void writeJson(JSONStreamWriter out) {
+        out.object();
+        WeatherDataJson.writeString(out, "cityName", cityName);
+        out.key("currentConditions");
+        currentConditions.writeJson(out);
+        out.key("forecasts");
+        hourlyForecasts.writeJson(out);
+        out.key("failures").array();
+        for (WeatherException failure : failures) {
+            out.value(failure.getMessage());
+        }
+        out.endArray();
+        out.endObject();
     }
 
     /**
@@ -42,7 +123,8 @@ public class WeatherData {
     WeatherData(String cityName, CurrentConditions currentConditions, List<ForecastConditions> hourlyForecasts) {
         this.cityName = cityName;
         this.currentConditions = currentConditions;
-        this.hourlyForecasts = hourlyForecasts;
+        this.hourlyForecasts = ForecastSeries.of(hourlyForecasts);
+        this.failures = List.of();
     }
 
     /**
@@ -64,45 +146,23 @@ public class WeatherData {
      * returns data for up to 5 days at 3-hour time intervals.
      */
     public List<ForecastConditions> getForecasts() {
-        return Collections.unmodifiableList(hourlyForecasts);
+        return hourlyForecasts.asList();
     }
 
     /**
-     * Increases the temperature range in the hourly forecast to reflect forecast uncertainty,
-     * based on (1) range of nearby temperatures and (2) time in the future. OpenWeather mostly
-     * returns the same value for the min and max for forecast temperates. This gives us something
-     * more interesting to display in a widget.
+     * The same forecasts as getForecasts(), stored as primitive columns. Use this to scan many
+     * forecasts without creating a ForecastConditions object for each.
      */
-    private void addUncertainty(List<ForecastConditions> forecasts) {
-        if (forecasts.isEmpty()) {
-            return;
-        }
-        for (ForecastConditions f : forecasts) {
-            if(f.getPredictionTime() == null || f.getTemperature() == null) {
-                return;
-            }
-        }
-
-        // Uncertainty based on time
-        for (ForecastConditions forecast : forecasts) {
-            forecast.addUncertainty(
-                Math.sqrt(hoursDifference(forecast, forecasts.get(0))) / 3);
-        }
-
-        // Uncertainty based on nearby variation
-        for (ForecastConditions forecast : forecasts) {
-            DoubleSummaryStatistics stats = forecasts.stream()
-                .filter(otherForecast -> hoursDifference(forecast, otherForecast) < 6)
-                .mapToDouble(Conditions::getTemperature)
-                .summaryStatistics();
-            forecast.addUncertainty(
-                Math.pow(stats.getMax() - stats.getMin(), 0.8));
-        }
+    public ForecastSeries getForecastSeries() {
+        return hourlyForecasts;
     }
 
-    private double hoursDifference(ForecastConditions f0, ForecastConditions f1) {
-        return Math.abs(f0.getPredictionTime().getTime() - f1.getPredictionTime().getTime())
-             / (3_600_000.0);
+    /**
+     * Problems that occurred while fetching this data. If this is not empty, then some of the
+     * conditions are blank because the request for them failed.
+     */
+    public List<WeatherException> getFailures() {
+        return failures;
     }
 
     @Override
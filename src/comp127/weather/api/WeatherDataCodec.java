@@ -0,0 +1,76 @@
+package comp127.weather.api;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Helpers for the compact binary form of weather data that WeatherDiskCache stores. Missing
+ * numbers are stored as NaN, missing dates as Long.MIN_VALUE, and missing strings as length -1.
+ */
+final class WeatherDataCodec {
+    private WeatherDataCodec() {
+    }
+
+    static void writeDouble(DataOutput out, Double value) throws IOException {
+        out.writeDouble(value != null ? value : Double.NaN);
+    }
+
+    static Double readDouble(ByteBuffer in) {
+        return Conditions.nullIfNaN(in.getDouble());
+    }
+
+    static void writeDate(DataOutput out, Date value) throws IOException {
+        out.writeLong(value != null ? value.getTime() : Long.MIN_VALUE);
+    }
+
+    static Date readDate(ByteBuffer in) {
+        long millis = in.getLong();
+        return millis != Long.MIN_VALUE ? new Date(millis) : null;
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == -1) {
+            return null;
+        }
+        checkLength(in, length, 1);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the number of items that follow, each of which takes at least bytesEach bytes.
+     *
+     * @throws IllegalArgumentException if that many items cannot fit in what is left of in.
+     */
+    static int readCount(ByteBuffer in, int bytesEach) {
+        int count = in.getInt();
+        checkLength(in, count, bytesEach);
+        return count;
+    }
+
+    /**
+     * Checks a length read from a file before allocating anything for it, so that a damaged file
+     * is rejected rather than causing an OutOfMemoryError.
+     */
+    private static void checkLength(ByteBuffer in, int count, int bytesEach) {
+        if (count < 0 || count > in.remaining() / bytesEach) {
+            throw new IllegalArgumentException(
+                "Length " + count + " does not fit in the " + in.remaining() + " bytes left");
+        }
+    }
+}
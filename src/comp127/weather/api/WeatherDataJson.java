@@ -0,0 +1,38 @@
+package comp127.weather.api;
+
+import org.json.JSONStreamWriter;
+
+import java.util.Date;
+
+/**
+ * Helpers for the JSON form of weather data described at
+ * {@link WeatherData#writeJson(JSONStreamWriter)}, which leaves out missing values.
+ */
+final class WeatherDataJson {
+    private WeatherDataJson() {
+    }
+
+    static void writeNumber(JSONStreamWriter out, String key, double value) {
+        if (!Double.isNaN(value)) {
+            out.key(key).value(value);
+        }
+    }
+
+    static void writeTime(JSONStreamWriter out, String key, long millis) {
+        if (millis != ForecastSeries.NO_TIME) {
+            out.key(key).value(millis);
+        }
+    }
+
+    static void writeTime(JSONStreamWriter out, String key, Date value) {
+        if (value != null) {
+            out.key(key).value(value.getTime());
+        }
+    }
+
+    static void writeString(JSONStreamWriter out, String key, String value) {
+        if (value != null) {
+            out.key(key).value(value);
+        }
+    }
+}
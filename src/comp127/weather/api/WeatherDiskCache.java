@@ -0,0 +1,110 @@
+package comp127.weather.api;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps the most recent complete weather for each location in a small file on disk, so that a
+ * program can show the last known weather as soon as it starts, and keep showing it across
+ * restarts while the API is unreachable.
+ *
+ * Each location gets its own file in the cache directory. Files are replaced atomically when new
+ * weather is saved, and read back whole into memory. They are not memory mapped, since on Windows
+ * a mapped file cannot be replaced until the mapping is garbage collected.
+ */
+public class WeatherDiskCache {
+    private static final int MAGIC = 0x57_54_48_52;  // "WTHR"
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path directory;
+
+    /**
+     * @param directory Where to keep the cache files. Created if it does not exist.
+     */
+    public WeatherDiskCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a cache in the directory named by cache.dir in weather-display.properties, or in
+     * .weather-display/cache in the user’s home directory if that is not set.
+     */
+    public static WeatherDiskCache fromProperties() {
+        String configured = OpenWeatherProvider.getProperty("cache.dir");
+        return new WeatherDiskCache(
+            configured != null
+                ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), ".weather-display", "cache"));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the last weather saved for the given key, or null if there is none or it cannot be
+     * read.
+     */
+    WeatherData load(WeatherCache.Key key) {
+        Path file = fileFor(key);
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (!key.toString().equals(WeatherDataCodec.readString(in))) {
+                return null;  // Two keys mapped to the same file name
+            }
+            in.getLong();  // time saved; not currently used
+            return new WeatherData(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            System.err.println("Unable to read cached weather from " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the saved weather for the given key. Failures are reported but otherwise ignored,
+     * since the cache is only an optimization.
+     */
+    void save(WeatherCache.Key key, WeatherData data) {
+        Path file = fileFor(key);
+        Path tempFile = null;
+        try {
+            Files.createDirectories(directory);
+            tempFile = Files.createTempFile(directory, "weather", ".tmp");
+            try (OutputStream fileOut = Files.newOutputStream(tempFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                WeatherDataCodec.writeString(out, key.toString());
+                out.writeLong(System.currentTimeMillis());
+                data.writeTo(out);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Unable to save cached weather to " + file + ": " + e);
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignored) {
+                    // Nothing more we can do
+                }
+            }
+        }
+    }
+
+    private Path fileFor(WeatherCache.Key key) {
+        return directory.resolve(key.toString().replaceAll("[^A-Za-z0-9.-]+", "_") + ".weather");
+    }
+}
@@ -0,0 +1,105 @@
+package comp127.weather.api;
+
+import java.util.Objects;
+
+/**
+ * A place to fetch weather for. You can either specify latitude and longitude OR city name and
+ * country code.
+ *
+ * Two locations are equal if they were created the same way with the same values, so these work
+ * as map keys.
+ */
+public final class WeatherLocation {
+    // There are two (well 4, but I'm not implementing all that) ways to specify where where you want
+    // weather for. if cityName & countryCode are non-null we will use those for every api call, otherwise we
+    // will use lat/long.
+    private final String cityName, countryCode;
+    private final Double lat, lng;
+
+    private WeatherLocation(String cityName, String countryCode, Double lat, Double lng) {
+        this.cityName = cityName;
+        this.countryCode = countryCode;
+        this.lat = lat;
+        this.lng = lng;
+    }
+
+    /**
+     * A location given by city name.
+     *
+     * @param cityName The name of the city, including the state/province.
+     * @param countryCode The two-letter country code for the country you want to get weather from
+     */
+    public static WeatherLocation ofCity(String cityName, String countryCode) {
+        return new WeatherLocation(cityName, countryCode, null, null);
+    }
+
+    /**
+     * A location given by latitude and longitude.
+     */
+    public static WeatherLocation ofCoordinates(double latitude, double longitude) {
+        return new WeatherLocation(null, null, latitude, longitude);
+    }
+
+    /**
+     * Returns true if we should use the city name to fetch weather info.
+     */
+    boolean usesCityName() {
+        if (cityName != null && countryCode != null) {
+            return true;
+        }
+        if (lat != null && lng != null) {
+            return false;
+        }
+        throw new IllegalStateException("Insufficient location information");
+    }
+
+    public String getCityName() {
+        return cityName;
+    }
+
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    /**
+     * The latitude, or NaN if this location is given by city name.
+     */
+    public double getLatitude() {
+        return lat != null ? lat : Double.NaN;
+    }
+
+    /**
+     * The longitude, or NaN if this location is given by city name.
+     */
+    public double getLongitude() {
+        return lng != null ? lng : Double.NaN;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WeatherLocation)) {
+            return false;
+        }
+        WeatherLocation that = (WeatherLocation) o;
+        return Objects.equals(cityName, that.cityName)
+            && Objects.equals(countryCode, that.countryCode)
+            && Objects.equals(lat, that.lat)
+            && Objects.equals(lng, that.lng);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(cityName, countryCode, lat, lng);
+    }
+
+    @Override
+    public String toString() {
+        if (lat != null || lng != null) {
+            return "(" + lat + ", " + lng + ")";
+        }
+        return cityName + ", " + countryCode;
+    }
+}
@@ -0,0 +1,235 @@
+package comp127.weather.api;
+
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Publishes each new piece of weather data for one location to any number of subscribers.
+ *
+ * Subscribers only receive as many updates as they request. Updates are never queued up: if new
+ * weather arrives before a subscriber has asked for more, it replaces whatever that subscriber
+ * has not received yet, so a slow subscriber always gets the latest weather next rather than
+ * working through a backlog of old data. A new subscriber receives the latest weather (if any)
+ * as soon as it requests something.
+ *
+ * Each subscriber's signals are delivered one at a time, on the publisher's executor.
+ */
+public class WeatherPublisher implements Flow.Publisher<WeatherData> {
+    private final Executor executor;
+    private final List<WeatherSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private WeatherData latest;
+    private boolean closed;
+
+    /**
+     * Creates a publisher that calls subscribers on the common fork-join pool, or on a new thread
+     * for each delivery if that pool has too few threads for a slow subscriber not to hold up the
+     * others (as SubmissionPublisher does).
+     */
+    public WeatherPublisher() {
+        this(ForkJoinPool.getCommonPoolParallelism() > 1
+            ? ForkJoinPool.commonPool()
+            : task -> new Thread(task).start());
+    }
+
+    /**
+     * @param executor Runs the calls to subscribers.
+     */
+    public WeatherPublisher(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a subscriber that runs updateCallback on the Swing event thread for each update. It
+     * asks for the next update only after the callback has run, so a busy event thread only ever
+     * sees the latest weather.
+     */
+    public static Flow.Subscriber<WeatherData> onSwingThread(Consumer<WeatherData> updateCallback) {
+        return new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(WeatherData data) {
+                SwingUtilities.invokeLater(() -> {
+                    try {
+                        updateCallback.accept(data);
+                    } finally {
+                        subscription.request(1);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                System.err.println("Weather updates failed: " + error);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        };
+    }
+
+    @Override
+    public synchronized void subscribe(Flow.Subscriber<? super WeatherData> subscriber) {
+        Objects.requireNonNull(subscriber);
+        WeatherSubscription subscription = new WeatherSubscription(subscriber);
+        if (!closed) {
+            subscriptions.add(subscription);
+        }
+        subscription.offer(latest);
+        if (closed) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Sends data to every subscriber.
+     */
+    synchronized void publish(WeatherData data) {
+        Objects.requireNonNull(data);
+        if (closed) {
+            return;
+        }
+        latest = data;
+        for (WeatherSubscription subscription : subscriptions) {
+            subscription.offer(data);
+        }
+    }
+
+    /**
+     * Tells every subscriber that there will be no more updates, once they have received the
+     * latest one. A subscriber that has not yet asked for that update is only completed after it
+     * does and receives it.
+     */
+    public synchronized void close() {
+        closed = true;
+        for (WeatherSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * The number of subscribers that have not cancelled.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    private class WeatherSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super WeatherData> subscriber;
+
+        // Only the newest undelivered update is kept
+        private final AtomicReference<WeatherData> pending = new AtomicReference<>();
+        private final AtomicLong demand = new AtomicLong();
+
+        // Counts signals since the last drain; whoever raises it from zero schedules the drain
+        private final AtomicInteger work = new AtomicInteger();
+
+        private boolean subscribed;  // only touched while draining
+        private volatile boolean cancelled, completed;
+        private volatile Throwable error;
+
+        WeatherSubscription(Flow.Subscriber<? super WeatherData> subscriber) {
+            this.subscriber = subscriber;
+            signal();
+        }
+
+        void offer(WeatherData data) {
+            if (data != null) {
+                pending.set(data);
+                signal();
+            }
+        }
+
+        void complete() {
+            completed = true;
+            signal();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Must request a positive number of updates, got " + n);
+            } else {
+                demand.accumulateAndGet(n, (current, more) -> {
+                    long total = current + more;
+                    return total < 0 ? Long.MAX_VALUE : total;  // Overflow means unbounded
+                });
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        private void signal() {
+            if (work.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (!subscribed) {
+                    subscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+                deliver();
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            while (!cancelled) {
+                if (error != null) {
+                    cancel();
+                    subscriber.onError(error);
+                    return;
+                }
+                if (demand.get() == 0) {
+                    break;
+                }
+                WeatherData data = pending.getAndSet(null);
+                if (data == null) {
+                    break;
+                }
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                try {
+                    subscriber.onNext(data);
+                } catch (RuntimeException e) {
+                    // A subscriber that throws is treated as having cancelled
+                    cancel();
+                    System.err.println("Weather subscriber failed: " + e);
+                    return;
+                }
+            }
+            // An update still waiting for demand is delivered before completing
+            if (completed && !cancelled && pending.get() == null) {
+                cancel();
+                subscriber.onComplete();
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package comp127.weather.api;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a display up to date by fetching the weather again and again from an OpenWeatherProvider.
+ *
+ * The time between refreshes adapts to the weather: when the forecast is uncertain (a wide range
+ * between the min and max temperatures in the next day or so), it refreshes more often, and when
+ * things are settled, less often. After a failed refresh it retries sooner, backing off
+ * exponentially while failures continue. Each refresh is only scheduled once the previous one has
+ * finished, so refreshes never overlap or pile up.
+ *
+ * Refreshes bypass the provider's cache, though their results still update it. Otherwise a refresh
+ * could be answered with stale cached data, whose own update would never reach the callback, and
+ * a failing server would go unnoticed until the cached data expired.
+ */
+public class WeatherRefreshScheduler {
+    // Number of forecasts (3 hours apart) to consider when judging how settled the weather is
+    private static final int LOOKAHEAD_FORECASTS = 8;
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Weather refresh timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final OpenWeatherProvider provider;
+    private final Consumer<WeatherData> updateCallback;
+
+    private Duration minInterval = Duration.ofMinutes(5);
+    private Duration normalInterval = Duration.ofMinutes(15);
+    private Duration maxInterval = Duration.ofMinutes(60);
+    private Duration firstRetryDelay = Duration.ofSeconds(30);
+    private double normalTemperatureSpread = 6;
+
+    private int consecutiveFailures;
+    private boolean running;
+    private ScheduledFuture<?> nextRefresh;
+    // Changed by every start() and stop(), so that a refresh still in progress from before them
+    // does not schedule another one alongside the new cycle
+    private int generation;
+
+    /**
+     * @param provider Where to get the weather.
+     * @param updateCallback Receives each update on the Swing event thread, just as with
+     *                       {@link OpenWeatherProvider#fetchWeather(Consumer)}.
+     */
+    public WeatherRefreshScheduler(OpenWeatherProvider provider, Consumer<WeatherData> updateCallback) {
+        this.provider = provider;
+        this.updateCallback = updateCallback;
+    }
+
+    /**
+     * Creates a scheduler for a provider whose updates are consumed through
+     * {@link OpenWeatherProvider#updates()}.
+     */
+    public WeatherRefreshScheduler(OpenWeatherProvider provider) {
+        this(provider, data -> { });
+    }
+
+    /**
+     * Sets the range of refresh intervals. Normally the scheduler waits normalInterval between
+     * refreshes, going as low as minInterval when the forecast is uncertain and as high as
+     * maxInterval when it is settled.
+     */
+    public synchronized void setIntervals(Duration minInterval, Duration normalInterval, Duration maxInterval) {
+        if (minInterval.compareTo(normalInterval) > 0 || normalInterval.compareTo(maxInterval) > 0) {
+            throw new IllegalArgumentException("Intervals must satisfy min <= normal <= max");
+        }
+        this.minInterval = minInterval;
+        this.normalInterval = normalInterval;
+        this.maxInterval = maxInterval;
+    }
+
+    /**
+     * How long to wait after the first failure before trying again. The delay doubles with each
+     * further failure, up to maxInterval.
+     */
+    public synchronized void setFirstRetryDelay(Duration firstRetryDelay) {
+        this.firstRetryDelay = firstRetryDelay;
+    }
+
+    /**
+     * The average min-to-max temperature spread in the near-term forecast that counts as normal,
+     * i.e. that leads to refreshing every normalInterval. Wider spreads refresh proportionally more
+     * often. Defaults to 6, which suits Fahrenheit; use a smaller value for Celsius.
+     */
+    public synchronized void setNormalTemperatureSpread(double normalTemperatureSpread) {
+        this.normalTemperatureSpread = normalTemperatureSpread;
+    }
+
+    /**
+     * Fetches the weather now, and keeps fetching it until stop() is called.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        consecutiveFailures = 0;
+        int current = ++generation;
+        nextRefresh = timer.schedule(() -> refresh(current), 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops refreshing. A refresh that is already in progress still delivers its result.
+     */
+    public synchronized void stop() {
+        running = false;
+        generation++;
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+            nextRefresh = null;
+        }
+    }
+
+    private void refresh(int refreshGeneration) {
+        synchronized (this) {
+            if (generation != refreshGeneration) {
+                return;
+            }
+        }
+        CompletableFuture<WeatherData> request;
+        try {
+            request = provider.fetchWeather(updateCallback, true);
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        request.whenComplete((data, error) -> {
+            synchronized (this) {
+                if (generation != refreshGeneration) {
+                    return;
+                }
+                Duration delay = nextDelay(data, error);
+                System.out.println("Next weather refresh in " + delay);
+                nextRefresh = timer.schedule(() -> refresh(refreshGeneration), delay.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    private Duration nextDelay(WeatherData data, Throwable error) {
+        if (error != null || !data.getFailures().isEmpty()) {
+            consecutiveFailures++;
+            Duration backoff = firstRetryDelay.multipliedBy(1L << Math.min(consecutiveFailures - 1, 20));
+            return backoff.compareTo(maxInterval) < 0 ? backoff : maxInterval;
+        }
+        consecutiveFailures = 0;
+
+        double spread = nearTermTemperatureSpread(data.getForecasts());
+        if (Double.isNaN(spread) || spread <= 0) {
+            return normalInterval;
+        }
+        long millis = Math.round(normalInterval.toMillis() * normalTemperatureSpread / spread);
+        return Duration.ofMillis(
+            Math.max(minInterval.toMillis(), Math.min(maxInterval.toMillis(), millis)));
+    }
+
+    /**
+     * The average spread between min and max temperature over the next few forecasts, or NaN if
+     * there are none to judge by.
+     */
+    private static double nearTermTemperatureSpread(List<ForecastConditions> forecasts) {
+        double total = 0;
+        int count = 0;
+        for (ForecastConditions forecast : forecasts.subList(0, Math.min(LOOKAHEAD_FORECASTS, forecasts.size()))) {
+            if (forecast.getMinTemperature() != null && forecast.getMaxTemperature() != null) {
+                total += forecast.getMaxTemperature() - forecast.getMinTemperature();
+                count++;
+            }
+        }
+        return count > 0 ? total / count : Double.NaN;
+    }
+}
@@ -0,0 +1,169 @@
+package comp127.weather.api;
+
+import net.aksingh.owmjapis.CurrentWeather;
+import net.aksingh.owmjapis.OpenWeatherMap;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Decoding a current weather response as it streams in, with CurrentWeatherStreamReader, must give
+ * exactly the same city name and CurrentConditions as building a JSONObject tree and a
+ * CurrentWeather from it: the same numbers to the bit, the same sunrise and sunset, the same
+ * description and icon, and the same missing values. Damaged responses have fields removed,
+ * numbers replaced with null, strings, booleans, objects and numbers out of range, and text
+ * replaced with null, blank and escaped strings.
+ * <p>
+ * One thing does differ: when the request itself fails, the streaming path fails the request,
+ * where CurrentWeather used to give blank conditions.
+ */
+class CurrentWeatherStreamReaderTest {
+    private static final Pattern FIELD = Pattern.compile(
+        "\"(temp|pressure|humidity|all|speed|deg|sunrise|sunset|description|icon|name)\":(-?[0-9.]+|\"[^\"]*\")");
+
+    private static final String[] NUMBER_REPLACEMENTS = {
+        "null", "true", "\"\"", "\" \"", "\"12.5\"", "\"-3\"", "\"1e2\"", "\"abc\"", "{}", "[]",
+        "{\"x\":1}", "[1,2]", "0", "-0", "1e400", "-1e-400", "123456789012345678901234567890",
+        "3.4028236e38", "0.1", "9007199254740993"
+    };
+
+    private static final String[] TEXT_REPLACEMENTS = {
+        "null", "\"\"", "\" \"", "\"  padded  \"", "\"12.5\"", "\"\\u00e9t\\u00e9 \\\"quoted\\\"\""
+    };
+
+    private final OpenWeatherMap openWeather = new OpenWeatherMap("test");
+
+    @Test
+    void openWeatherPayloads() throws IOException {
+        for (int seed = 0; seed < 500; seed++) {
+            check(OpenWeatherPayloads.currentWeather(seed, 44.94, -93.17));
+        }
+    }
+
+    @Test
+    void damagedFields() throws IOException {
+        Random random = new Random(1);
+        for (int seed = 0; seed < 2000; seed++) {
+            check(damage(OpenWeatherPayloads.currentWeather(seed, -33.9, 151.2), random));
+        }
+    }
+
+    @Test
+    void edgeCases() throws IOException {
+        List<String> corpus = List.of(
+            "{}",
+            "{\"cod\":200}",
+            "{\"name\":\"\"}",
+            "{\"name\":\"  \"}",
+            "{\"name\":null}",
+            "{\"name\":\"Saint Paul\",\"main\":{},\"wind\":{},\"clouds\":{},\"sys\":{},\"weather\":[]}",
+            "{\"main\":[],\"wind\":\"calm\",\"clouds\":3,\"sys\":null,\"weather\":{}}",
+            "{\"wind\":{\"deg\":180}}",
+            "{\"wind\":{\"speed\":3}}",
+            "{\"sys\":{\"sunrise\":\"1601553600\",\"sunset\":1.6015536E9}}",
+            "{\"weather\":[{\"icon\":\"01d\"}]}",
+            "{\"weather\":[null,{\"description\":\"rain\",\"icon\":\"10n\"}]}",
+            "{\"weather\":[{\"description\":\"fog\"},{\"description\":\"rain\",\"icon\":\"10n\"}]}",
+            "{\"main\":{\"temp\":70.123456789,\"pressure\":-459.67,\"humidity\":1e30}}",
+            "{\"name\":\"First\",\"coord\":{\"name\":\"Nested\"},\"list\":[{\"name\":\"Deeper\"}]}");
+        for (String json : corpus) {
+            check(json);
+        }
+    }
+
+    @Test
+    void transportErrorFailsRequest() throws IOException {
+        try (FakeOpenWeatherServer server = new FakeOpenWeatherServer()) {
+            server.setErrorRate(1);
+            ApiQuota.setQuota("test", new ApiQuota(Integer.MAX_VALUE, Integer.MAX_VALUE, Duration.ZERO));
+            OpenWeatherProvider provider = new OpenWeatherProvider(
+                "test", server.getApiUrl(), WeatherLocation.ofCoordinates(44.94, -93.17));
+            provider.setCache(null);
+            FetchPolicy fetchPolicy = new FetchPolicy();
+            fetchPolicy.setMaxAttempts(1);
+            provider.setFetchPolicy(fetchPolicy);
+
+            CompletionException error = assertThrows(
+                CompletionException.class, () -> provider.fetchWeatherAsync().join());
+            assertTrue(error.getCause() instanceof WeatherException, () -> "Failed with " + error.getCause());
+            // Current conditions failed too, rather than coming back blank
+            assertEquals(1, error.getCause().getSuppressed().length);
+        }
+    }
+
+    private void check(String json) throws IOException {
+        CurrentWeather currentWeather = openWeather.currentWeatherFromRawResponse(json);
+        String expected = describe(
+            Conditions.nullIfBlank(currentWeather.getCityName()),
+            new CurrentConditions(currentWeather));
+
+        CurrentWeatherStreamReader.Result result =
+            CurrentWeatherStreamReader.read(new ByteArrayInputStream(json.getBytes(UTF_8)));
+        String actual = describe(result.getCityName(), result.getConditions());
+
+        assertEquals(expected, actual, () -> "Decoding " + json);
+    }
+
+    private static String describe(String cityName, CurrentConditions conditions) {
+        return "city=" + cityName
+            + " temperature=" + bits(conditions.getTemperature())
+            + " humidity=" + bits(conditions.getHumidity())
+            + " pressure=" + bits(conditions.getPressure())
+            + " clouds=" + bits(conditions.getCloudCoverage())
+            + " windSpeed=" + bits(conditions.getWindSpeed())
+            + " windDirection=" + bits(conditions.getWindDirectionInDegrees())
+            + " sunrise=" + time(conditions.getSunriseTime())
+            + " sunset=" + time(conditions.getSunsetTime())
+            + " description=" + conditions.getWeatherDescription()
+            + " icon=" + conditions.getWeatherIcon();
+    }
+
+    /**
+     * The value and its exact bits, so that for example 0.0 and -0.0 do not look alike.
+     */
+    private static String bits(Double value) {
+        return value == null ? "null" : value + "/" + Long.toHexString(Double.doubleToRawLongBits(value));
+    }
+
+    private static String time(Date date) {
+        return date == null ? "null" : String.valueOf(date.getTime());
+    }
+
+    /**
+     * Removes some fields, by renaming them, and replaces the values of others.
+     */
+    private static String damage(String json, Random random) {
+        Matcher matcher = FIELD.matcher(json);
+        StringBuilder out = new StringBuilder();
+        while (matcher.find()) {
+            String replacement;
+            switch (random.nextInt(4)) {
+                case 0:
+                    replacement = "\"x_" + matcher.group(1) + "\":" + matcher.group(2);
+                    break;
+                case 1:
+                    String[] replacements = matcher.group(2).startsWith("\"") ? TEXT_REPLACEMENTS : NUMBER_REPLACEMENTS;
+                    replacement = "\"" + matcher.group(1) + "\":" + replacements[random.nextInt(replacements.length)];
+                    break;
+                default:
+                    replacement = matcher.group();
+            }
+            matcher.appendReplacement(out, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+}
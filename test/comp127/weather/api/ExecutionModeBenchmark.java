@@ -0,0 +1,65 @@
+package comp127.weather.api;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares how long it takes to get through many slow API requests at once with the original
+ * single-thread request queue and with each ExecutionMode. The server is simulated by sleeping, so
+ * no API key or network is needed.
+ *
+ * Usage: ExecutionModeBenchmark [requests [latencyMillis]]
+ *
+ * Virtual threads are only used when running on Java 21 or later; otherwise that row measures the
+ * thread pool fallback.
+ */
+public class ExecutionModeBenchmark {
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int latencyMillis = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        System.out.println(requests + " requests, " + latencyMillis + " ms simulated latency each");
+        System.out.println();
+        run("single thread queue", Executors.newSingleThreadExecutor(), requests, latencyMillis);
+        run("thread pool", ExecutionMode.THREAD_POOL.newExecutor(), requests, latencyMillis);
+        run("virtual threads", ExecutionMode.VIRTUAL_THREADS.newExecutor(), requests, latencyMillis);
+    }
+
+    private static void run(String name, ExecutorService executor, int requests, int latencyMillis) throws Exception {
+        // Take timeouts, retries and quota out of the picture; this only measures the executor
+        FetchPolicy policy = new FetchPolicy();
+        policy.setAttemptTimeout(Duration.ofHours(1));
+        policy.setDeadline(Duration.ofHours(1));
+        ApiQuota quota = new ApiQuota(Integer.MAX_VALUE, Integer.MAX_VALUE, Duration.ZERO);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long start = System.nanoTime();
+
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int n = 0; n < requests; n++) {
+            int request = n;
+            results.add(policy.execute("benchmark", quota, () -> executor, () -> {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    throw new WeatherException("Interrupted", e);
+                }
+                return request;
+            }));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(
+            "%-20s %8.2f s %10.0f requests/s %6d peak platform threads%n",
+            name, seconds, requests / seconds, threads.getPeakThreadCount());
+        executor.shutdown();
+    }
+}
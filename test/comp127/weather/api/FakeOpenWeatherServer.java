@@ -0,0 +1,229 @@
+package comp127.weather.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local stand-in for the OpenWeather API, for exercising the weather code without a network
+ * connection or an API key quota. It answers weather? and forecast? requests with realistic
+ * payloads from OpenWeatherPayloads, the same for the same location every time.
+ *
+ * The simulated latency, error rate and compression are adjustable while the server is running.
+ * Point a provider at it with {@link OpenWeatherProvider#setApiUrl(String)} and {@link #getApiUrl()},
+ * or set api.url in weather-display.properties to the address printed by main().
+ */
+public class FakeOpenWeatherServer implements Closeable {
+    static {
+        // Otherwise Nagle's algorithm holds back the body until the client's delayed ACK for the
+        // headers, adding about 40 ms to every response
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private volatile long minLatencyNanos, maxLatencyNanos;
+    private volatile double errorRate;
+    private volatile boolean gzip = true;
+    private volatile boolean chunked;
+
+    private final AtomicLong requests = new AtomicLong(), errors = new AtomicLong();
+
+    /**
+     * Starts a server on any free port.
+     */
+    public FakeOpenWeatherServer() throws IOException {
+        this(0);
+    }
+
+    /**
+     * Starts a server on the given port of the loopback interface.
+     */
+    public FakeOpenWeatherServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/data/2.5/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Each response is delayed by a random time between min and max. Defaults to no delay.
+     */
+    public void setLatency(Duration min, Duration max) {
+        if (min.compareTo(max) > 0) {
+            throw new IllegalArgumentException("min latency must not be more than max");
+        }
+        minLatencyNanos = min.toNanos();
+        maxLatencyNanos = max.toNanos();
+    }
+
+    /**
+     * The fraction of requests, from 0 to 1, that get a 500 response instead. Defaults to 0.
+     */
+    public void setErrorRate(double errorRate) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("errorRate must be between 0 and 1, got " + errorRate);
+        }
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Whether to gzip responses for clients that accept it. Defaults to true, as the real API does.
+     */
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * Whether to send responses in chunks, with no Content-Length. Defaults to false.
+     */
+    public void setChunked(boolean chunked) {
+        this.chunked = chunked;
+    }
+
+    /**
+     * The address to pass to OpenWeatherMap.setApiUrl().
+     */
+    public String getApiUrl() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort() + "/data/2.5/";
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            simulateLatency();
+
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                errors.incrementAndGet();
+                respond(exchange, 500, "{\"cod\":500,\"message\":\"Internal error (simulated)\"}");
+                return;
+            }
+            if (!query.containsKey("appId") && !query.containsKey("appid")) {
+                respond(exchange, 401, "{\"cod\":401,\"message\":\"Invalid API key.\"}");
+                return;
+            }
+
+            double lat = parseDouble(query.get("lat")), lon = parseDouble(query.get("lon"));
+            int seed = query.containsKey("q") ? query.get("q").hashCode() : Double.hashCode(lat) * 31 + Double.hashCode(lon);
+            if (path.endsWith("/weather")) {
+                respond(exchange, 200, OpenWeatherPayloads.currentWeather(seed, lat, lon));
+            } else if (path.endsWith("/forecast")) {
+                int count = query.containsKey("cnt") ? Integer.parseInt(query.get("cnt")) : 40;
+                respond(exchange, 200, OpenWeatherPayloads.hourlyForecast(seed, lat, lon, count));
+            } else {
+                respond(exchange, 404, "{\"cod\":\"404\",\"message\":\"Internal error\"}");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void simulateLatency() {
+        long min = minLatencyNanos, max = maxLatencyNanos;
+        if (max <= 0) {
+            return;
+        }
+        try {
+            long delay = min + (max > min ? ThreadLocalRandom.current().nextLong(max - min) : 0);
+            Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, chunked ? 0 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> result = new HashMap<>();
+        if (rawQuery == null) {
+            return result;
+        }
+        for (String param : rawQuery.split("&")) {
+            int equals = param.indexOf('=');
+            if (equals > 0) {
+                result.put(
+                    param.substring(0, equals),
+                    URLDecoder.decode(param.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return value != null ? Double.parseDouble(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Runs a server until the process is killed.
+     *
+     * Usage: FakeOpenWeatherServer [port [minLatencyMillis maxLatencyMillis [errorRate]]]
+     */
+    public static void main(String[] args) throws IOException {
+        FakeOpenWeatherServer server = new FakeOpenWeatherServer(args.length > 0 ? Integer.parseInt(args[0]) : 0);
+        if (args.length > 2) {
+            server.setLatency(
+                Duration.ofMillis(Long.parseLong(args[1])),
+                Duration.ofMillis(Long.parseLong(args[2])));
+        }
+        if (args.length > 3) {
+            server.setErrorRate(Double.parseDouble(args[3]));
+        }
+        System.out.println("Serving fake weather at " + server.getApiUrl());
+    }
+}
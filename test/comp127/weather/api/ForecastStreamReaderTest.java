@@ -0,0 +1,134 @@
+package comp127.weather.api;
+
+import net.aksingh.owmjapis.HourlyForecast;
+import net.aksingh.owmjapis.OpenWeatherMap;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Decoding a forecast response as it streams in, with ForecastStreamReader, must give exactly the
+ * same ForecastConditions as building a JSONObject tree and an HourlyForecast from it: the same
+ * time, the same numbers to the bit, the same description and icon, and the same missing values.
+ * Damaged responses have fields removed, numbers replaced with null, strings, booleans, objects and
+ * numbers out of range, and descriptions replaced with null, blank and escaped strings.
+ */
+class ForecastStreamReaderTest {
+    private static final Pattern FIELD = Pattern.compile(
+        "\"(dt|temp|temp_min|temp_max|pressure|humidity|all|speed|deg|description|icon)\":(-?[0-9.]+|\"[^\"]*\")");
+
+    private static final String[] NUMBER_REPLACEMENTS = {
+        "null", "true", "\"\"", "\" \"", "\"12.5\"", "\"-3\"", "\"1e2\"", "\"abc\"", "{}", "[]",
+        "{\"x\":1}", "[1,2]", "0", "-0", "1e400", "-1e-400", "123456789012345678901234567890",
+        "3.4028236e38", "0.1", "9007199254740993"
+    };
+
+    private static final String[] TEXT_REPLACEMENTS = {
+        "null", "\"\"", "\" \"", "\"  padded  \"", "\"12.5\"", "\"\\u00e9t\\u00e9 \\\"quoted\\\"\""
+    };
+
+    private final OpenWeatherMap openWeather = new OpenWeatherMap("test");
+
+    @Test
+    void openWeatherPayloads() throws IOException {
+        for (int seed = 0; seed < 200; seed++) {
+            check(OpenWeatherPayloads.hourlyForecast(seed, 44.94, -93.17, seed % 41));
+        }
+    }
+
+    @Test
+    void damagedFields() throws IOException {
+        Random random = new Random(1);
+        for (int seed = 0; seed < 500; seed++) {
+            check(damage(OpenWeatherPayloads.hourlyForecast(seed, -33.9, 151.2, 1 + seed % 8), random));
+        }
+    }
+
+    @Test
+    void edgeCases() throws IOException {
+        List<String> corpus = List.of(
+            "{}",
+            "{\"list\":[]}",
+            "{\"list\":[{}]}",
+            "{\"list\":[{\"dt\":1601553600}]}",
+            "{\"list\":[{\"dt\":\"1601553600\",\"main\":{\"temp\":\"51.3\"}}]}",
+            "{\"list\":[{\"dt\":1601553600,\"main\":{},\"wind\":{},\"clouds\":{},\"weather\":[]}]}",
+            "{\"list\":[{\"dt\":1601553600,\"wind\":{\"deg\":180}}]}",
+            "{\"list\":[{\"dt\":1601553600,\"wind\":{\"speed\":3}}]}",
+            "{\"list\":[{\"dt\":1601553600,\"weather\":[{\"icon\":\"01d\"}]}]}",
+            "{\"list\":[{\"dt\":1601553600,\"weather\":[{\"description\":\"\",\"icon\":\"\"}]}]}",
+            "{\"list\":[{\"dt\":1601553600,\"weather\":[{\"description\":\"fog\"},{\"description\":\"rain\",\"icon\":\"10n\"}]}]}",
+            "{\"list\":[{\"dt\":1601553600,\"main\":{\"temp\":70.123456789,\"temp_min\":-459.67,\"temp_max\":1e30}}]}",
+            "{\"cod\":\"200\",\"city\":{\"name\":\"Elsewhere\"},\"list\":[{\"dt\":1601553600}],\"cnt\":1}");
+        for (String json : corpus) {
+            check(json);
+        }
+    }
+
+    private void check(String json) throws IOException {
+        HourlyForecast hourlyForecast = openWeather.hourlyForecastFromRawResponse(json);
+        List<String> expected = hourlyForecast.getForecasts().stream()
+            .map(ForecastConditions::new)
+            .map(ForecastStreamReaderTest::describe)
+            .collect(toList());
+        List<String> actual = ForecastStreamReader.read(new ByteArrayInputStream(json.getBytes(UTF_8))).stream()
+            .map(ForecastStreamReaderTest::describe)
+            .collect(toList());
+        assertEquals(expected, actual, () -> "Decoding " + json);
+    }
+
+    private static String describe(ForecastConditions forecast) {
+        return "time=" + (forecast.getPredictionTime() != null ? forecast.getPredictionTime().getTime() : null)
+            + " temperature=" + bits(forecast.getTemperature())
+            + " min=" + bits(forecast.getMinTemperature())
+            + " max=" + bits(forecast.getMaxTemperature())
+            + " humidity=" + bits(forecast.getHumidity())
+            + " pressure=" + bits(forecast.getPressure())
+            + " clouds=" + bits(forecast.getCloudCoverage())
+            + " windSpeed=" + bits(forecast.getWindSpeed())
+            + " windDirection=" + bits(forecast.getWindDirectionInDegrees())
+            + " description=" + forecast.getWeatherDescription()
+            + " icon=" + forecast.getWeatherIcon();
+    }
+
+    /**
+     * The value and its exact bits, so that for example 0.0 and -0.0 do not look alike.
+     */
+    private static String bits(Double value) {
+        return value == null ? "null" : value + "/" + Long.toHexString(Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Removes some fields, by renaming them, and replaces the values of others.
+     */
+    private static String damage(String json, Random random) {
+        Matcher matcher = FIELD.matcher(json);
+        StringBuilder out = new StringBuilder();
+        while (matcher.find()) {
+            String replacement;
+            switch (random.nextInt(4)) {
+                case 0:
+                    replacement = "\"x_" + matcher.group(1) + "\":" + matcher.group(2);
+                    break;
+                case 1:
+                    String[] replacements = matcher.group(2).startsWith("\"") ? TEXT_REPLACEMENTS : NUMBER_REPLACEMENTS;
+                    replacement = "\"" + matcher.group(1) + "\":" + replacements[random.nextInt(replacements.length)];
+                    break;
+                default:
+                    replacement = matcher.group();
+            }
+            matcher.appendReplacement(out, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,223 @@
+package comp127.weather.api;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates response bodies shaped like the real OpenWeather current weather and 5 day / 3 hour
+ * forecast responses, with all the fields the real API sends. The values are pseudorandom, but
+ * will always be the same given the same seed.
+ */
+public class OpenWeatherPayloads {
+    private static final String[][] CONDITIONS = {
+        { "800", "Clear", "clear sky", "01" },
+        { "801", "Clouds", "few clouds", "02" },
+        { "802", "Clouds", "scattered clouds", "03" },
+        { "804", "Clouds", "overcast clouds", "04" },
+        { "500", "Rain", "light rain", "10" },
+        { "502", "Rain", "heavy intensity rain", "10" },
+        { "211", "Thunderstorm", "thunderstorm", "11" },
+        { "601", "Snow", "snow", "13" },
+        { "741", "Fog", "fog", "50" },
+    };
+
+    // Noon UTC, 1 Oct 2020
+    private static final long BASE_TIME = 1601553600L;
+
+    public static String currentWeather(int seed, double lat, double lon) {
+        Random random = new Random(seed);
+        long dt = BASE_TIME + random.nextInt(86400);
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"coord\":{\"lon\":").append(number(lon)).append(",\"lat\":").append(number(lat)).append("},");
+        weather(json, random, dt);
+        json.append(",\"base\":\"stations\",");
+        main(json, random, false);
+        json.append(",\"visibility\":").append(1000 * (1 + random.nextInt(10)));
+        wind(json, random);
+        json.append(",\"clouds\":{\"all\":").append(random.nextInt(101)).append('}');
+        json.append(",\"dt\":").append(dt);
+        json.append(",\"sys\":{\"type\":1,\"id\":").append(5000 + random.nextInt(1000))
+            .append(",\"country\":\"US\",\"sunrise\":").append(BASE_TIME - 21600 + random.nextInt(3600))
+            .append(",\"sunset\":").append(BASE_TIME + 21600 + random.nextInt(3600)).append('}');
+        json.append(",\"timezone\":-18000,\"id\":").append(5000000 + Math.abs(seed % 1000000))
+            .append(",\"name\":\"City ").append(Math.abs(seed % 1000)).append("\",\"cod\":200}");
+        return json.toString();
+    }
+
+    public static String hourlyForecast(int seed, double lat, double lon, int count) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder(400 + count * 560);
+        json.append("{\"cod\":\"200\",\"message\":0,\"cnt\":").append(count).append(",\"list\":[");
+        for (int n = 0; n < count; n++) {
+            long dt = BASE_TIME + n * 10800L;
+            if (n > 0) {
+                json.append(',');
+            }
+            json.append("{\"dt\":").append(dt).append(',');
+            main(json, random, true);
+            json.append(',');
+            weather(json, random, dt);
+            json.append(",\"clouds\":{\"all\":").append(random.nextInt(101)).append('}');
+            wind(json, random);
+            json.append(",\"visibility\":10000,\"pop\":").append(number(random.nextInt(101) / 100.0));
+            if (random.nextInt(4) == 0) {
+                json.append(",\"rain\":{\"3h\":").append(number(random.nextDouble() * 5)).append('}');
+            }
+            json.append(",\"sys\":{\"pod\":\"").append(random.nextBoolean() ? 'd' : 'n').append("\"}")
+                .append(",\"dt_txt\":\"").append(dateText(dt)).append("\"}");
+        }
+        json.append("],\"city\":{\"id\":").append(5000000 + Math.abs(seed % 1000000))
+            .append(",\"name\":\"City ").append(Math.abs(seed % 1000))
+            .append("\",\"coord\":{\"lat\":").append(number(lat)).append(",\"lon\":").append(number(lon))
+            .append("},\"country\":\"US\",\"population\":").append(random.nextInt(1000000))
+            .append(",\"timezone\":-18000,\"sunrise\":").append(BASE_TIME - 21600)
+            .append(",\"sunset\":").append(BASE_TIME + 21600).append("}}");
+        return json.toString();
+    }
+
+    /**
+     * A 16 day daily forecast (the forecast/daily endpoint), with count days.
+     */
+    public static String dailyForecast(int seed, double lat, double lon, int count) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder(400 + count * 700);
+        json.append("{\"city\":{\"id\":").append(5000000 + Math.abs(seed % 1000000))
+            .append(",\"name\":\"City ").append(Math.abs(seed % 1000))
+            .append("\",\"coord\":{\"lon\":").append(number(lon)).append(",\"lat\":").append(number(lat))
+            .append("},\"country\":\"US\",\"population\":").append(random.nextInt(1000000))
+            .append(",\"timezone\":-18000},\"cod\":\"200\",\"message\":0.0473,\"cnt\":").append(count)
+            .append(",\"list\":[");
+        for (int n = 0; n < count; n++) {
+            long dt = BASE_TIME + n * 86400L;
+            double day = 20 + random.nextDouble() * 70;
+            if (n > 0) {
+                json.append(',');
+            }
+            json.append("{\"dt\":").append(dt)
+                .append(",\"sunrise\":").append(dt - 21600 + random.nextInt(600))
+                .append(",\"sunset\":").append(dt + 21600 + random.nextInt(600))
+                .append(",\"temp\":{\"day\":").append(number(day))
+                .append(",\"min\":").append(number(day - 5 - random.nextDouble() * 10))
+                .append(",\"max\":").append(number(day + random.nextDouble() * 5))
+                .append(",\"night\":").append(number(day - random.nextDouble() * 10))
+                .append(",\"eve\":").append(number(day - random.nextDouble() * 5))
+                .append(",\"morn\":").append(number(day - random.nextDouble() * 8))
+                .append("},\"feels_like\":{\"day\":").append(number(day - random.nextDouble() * 3))
+                .append(",\"night\":").append(number(day - random.nextDouble() * 12))
+                .append(",\"eve\":").append(number(day - random.nextDouble() * 6))
+                .append(",\"morn\":").append(number(day - random.nextDouble() * 9))
+                .append("},\"pressure\":").append(990 + random.nextInt(40))
+                .append(",\"humidity\":").append(random.nextInt(101))
+                .append(',');
+            weather(json, random, BASE_TIME);
+            json.append(",\"speed\":").append(number(random.nextDouble() * 25))
+                .append(",\"deg\":").append(random.nextInt(360))
+                .append(",\"gust\":").append(number(random.nextDouble() * 35))
+                .append(",\"clouds\":").append(random.nextInt(101))
+                .append(",\"pop\":").append(number(random.nextInt(101) / 100.0));
+            if (random.nextInt(3) == 0) {
+                json.append(",\"rain\":").append(number(random.nextDouble() * 20));
+            }
+            json.append('}');
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Current weather for many cities at once (the group endpoint), with count cities.
+     */
+    public static String multiCity(int seed, int count) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder(32 + count * 600);
+        json.append("{\"cnt\":").append(count).append(",\"list\":[");
+        for (int n = 0; n < count; n++) {
+            if (n > 0) {
+                json.append(',');
+            }
+            json.append(currentWeather(random.nextInt(), 25 + random.nextDouble() * 24, -125 + random.nextDouble() * 58));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Hourly readings for one place as parallel arrays, one per field, the way bulk history exports
+     * and archived series store them, with count hours.
+     */
+    public static String hourlySeries(int seed, double lat, double lon, int count) {
+        Random random = new Random(seed);
+        StringBuilder[] columns = new StringBuilder[6];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new StringBuilder(count * 8);
+        }
+        double temp = 20 + random.nextDouble() * 70;
+        for (int n = 0; n < count; n++) {
+            temp = Math.max(-40, Math.min(110, temp + random.nextGaussian() * 2));
+            if (n > 0) {
+                for (StringBuilder column : columns) {
+                    column.append(',');
+                }
+            }
+            columns[0].append(BASE_TIME + n * 3600L);
+            columns[1].append(number(temp));
+            columns[2].append(number(temp - random.nextDouble() * 5));
+            columns[3].append(990 + random.nextInt(40));
+            columns[4].append(random.nextInt(101));
+            columns[5].append(number(random.nextDouble() * 25));
+        }
+        StringBuilder json = new StringBuilder(200 + count * 40);
+        json.append("{\"lat\":").append(number(lat)).append(",\"lon\":").append(number(lon))
+            .append(",\"timezone\":-18000");
+        String[] names = { "dt", "temp", "feels_like", "pressure", "humidity", "wind_speed" };
+        for (int i = 0; i < names.length; i++) {
+            json.append(",\"").append(names[i]).append("\":[").append(columns[i]).append(']');
+        }
+        return json.append('}').toString();
+    }
+
+    private static void weather(StringBuilder json, Random random, long dt) {
+        String[] condition = CONDITIONS[random.nextInt(CONDITIONS.length)];
+        boolean day = (dt - BASE_TIME) % 86400 < 43200;
+        json.append("\"weather\":[{\"id\":").append(condition[0])
+            .append(",\"main\":\"").append(condition[1])
+            .append("\",\"description\":\"").append(condition[2])
+            .append("\",\"icon\":\"").append(condition[3]).append(day ? 'd' : 'n').append("\"}]");
+    }
+
+    private static void main(StringBuilder json, Random random, boolean forecast) {
+        double temp = 20 + random.nextDouble() * 70;
+        json.append("\"main\":{\"temp\":").append(number(temp))
+            .append(",\"feels_like\":").append(number(temp - random.nextDouble() * 5))
+            .append(",\"temp_min\":").append(number(temp - random.nextDouble() * 4))
+            .append(",\"temp_max\":").append(number(temp + random.nextDouble() * 4))
+            .append(",\"pressure\":").append(990 + random.nextInt(40));
+        if (forecast) {
+            json.append(",\"sea_level\":").append(1000 + random.nextInt(30))
+                .append(",\"grnd_level\":").append(980 + random.nextInt(30));
+        }
+        json.append(",\"humidity\":").append(random.nextInt(101));
+        if (forecast) {
+            json.append(",\"temp_kf\":").append(number(random.nextDouble() * 2 - 1));
+        }
+        json.append('}');
+    }
+
+    private static void wind(StringBuilder json, Random random) {
+        json.append(",\"wind\":{\"speed\":").append(number(random.nextDouble() * 25))
+            .append(",\"deg\":").append(random.nextInt(360))
+            .append(",\"gust\":").append(number(random.nextDouble() * 35)).append('}');
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static String dateText(long epochSeconds) {
+        return LocalDateTime
+            .ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC)
+            .toString().replace('T', ' ') + ":00";
+    }
+}
@@ -0,0 +1,148 @@
+package comp127.weather.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ForecastSeries.addUncertainty() must give exactly the same min and max temperatures as the
+ * original quadratic implementation on a list of ForecastConditions, which is kept here as the
+ * reference. Random series may be unsorted, irregularly spaced, have repeated times, or contain
+ * infinite temperatures. They have no NaN temperatures, since ForecastSeries stores NaN as missing.
+ */
+class UncertaintyRegressionTest {
+    @Test
+    void fixtureWeather() {
+        for (int seed = -50; seed <= 200; seed++) {
+            int fixtureSeed = seed;
+            compare("fixture " + seed, random ->
+                WeatherDataFixtures.generateWeatherData(fixtureSeed).getForecasts(), null);
+        }
+    }
+
+    @Test
+    void shortRandomSeries() {
+        Random random = new Random(1);
+        for (int n = 0; n < 1900; n++) {
+            int length = random.nextInt(60);
+            compare("short series " + n, r -> randomSeries(r, length), random);
+        }
+    }
+
+    @Test
+    void longRandomSeries() {
+        Random random = new Random(2);
+        for (int n = 0; n < 100; n++) {
+            int length = random.nextInt(5000);
+            compare("long series " + n, r -> randomSeries(r, length), random);
+        }
+    }
+
+    private interface SeriesGenerator {
+        List<ForecastConditions> generate(Random random);
+    }
+
+    private static void compare(String name, SeriesGenerator generator, Random random) {
+        List<ForecastConditions> expected = generator.generate(random);
+        ForecastSeries series = ForecastSeries.of(expected);
+
+        originalAddUncertainty(expected);
+        series.addUncertainty();
+        compare(name, expected, series.asList());
+    }
+
+    private static void compare(
+            String name,
+            List<ForecastConditions> expected,
+            List<ForecastConditions> actual
+    ) {
+        for (int n = 0; n < expected.size(); n++) {
+            ForecastConditions e = expected.get(n), a = actual.get(n);
+            int index = n;
+            assertTrue(
+                same(e.getMinTemperature(), a.getMinTemperature())
+                    && same(e.getMaxTemperature(), a.getMaxTemperature()),
+                () -> name + " [" + index + "]: expected "
+                    + e.getMinTemperature() + ".." + e.getMaxTemperature() + ", got "
+                    + a.getMinTemperature() + ".." + a.getMaxTemperature());
+        }
+    }
+
+    private static boolean same(Double x, Double y) {
+        if (x != null && x.isNaN()) {
+            x = null;  // ForecastSeries stores a missing value as NaN, and reads it back as null
+        }
+        return x == null ? y == null : y != null && Double.doubleToLongBits(x) == Double.doubleToLongBits(y);
+    }
+
+    private static List<ForecastConditions> randomSeries(Random random, int length) {
+        long time = 1_600_000_000_000L + random.nextInt(1_000_000);
+        int style = random.nextInt(4);
+        List<ForecastConditions> forecasts = new ArrayList<>();
+        for (int n = 0; n < length; n++) {
+            switch (style) {
+            case 0:  // API-like: every 3 hours
+                time += 3 * 3_600_000L;
+                break;
+            case 1:  // Irregular, sometimes repeated, sometimes exactly 6 hours apart
+                time += random.nextInt(4) == 0 ? 0 : random.nextInt(3) == 0 ? 21_600_000L : random.nextInt(8 * 3_600_000);
+                break;
+            default:  // Hourly
+                time += 3_600_000L;
+                break;
+            }
+            double temperature = random.nextInt(1000) == 0
+                ? Double.POSITIVE_INFINITY
+                : Math.round(random.nextGaussian() * 2000) / 100.0 + 50;
+            forecasts.add(new ForecastConditions(
+                new Date(time), temperature, temperature, temperature,
+                50, 1000, 20, 5, 180, "clear sky", "01d"));
+        }
+        if (style == 3) {
+            Collections.shuffle(forecasts, random);
+        }
+        return forecasts;
+    }
+
+    /**
+     * Adding uncertainty as it was originally written, on a list of ForecastConditions.
+     */
+    private static void originalAddUncertainty(List<ForecastConditions> forecasts) {
+        if (forecasts.isEmpty()) {
+            return;
+        }
+        for (ForecastConditions f : forecasts) {
+            if(f.getPredictionTime() == null || f.getTemperature() == null) {
+                return;
+            }
+        }
+
+        // Uncertainty based on time
+        for (ForecastConditions forecast : forecasts) {
+            forecast.addUncertainty(
+                Math.sqrt(hoursDifference(forecast, forecasts.get(0))) / 3);
+        }
+
+        // Uncertainty based on nearby variation
+        for (ForecastConditions forecast : forecasts) {
+            DoubleSummaryStatistics stats = forecasts.stream()
+                .filter(otherForecast -> hoursDifference(forecast, otherForecast) < 6)
+                .mapToDouble(Conditions::getTemperature)
+                .summaryStatistics();
+            forecast.addUncertainty(
+                Math.pow(stats.getMax() - stats.getMin(), 0.8));
+        }
+    }
+
+    private static double hoursDifference(ForecastConditions f0, ForecastConditions f1) {
+        return Math.abs(f0.getPredictionTime().getTime() - f1.getPredictionTime().getTime())
+             / (3_600_000.0);
+    }
+}
@@ -0,0 +1,130 @@
+package comp127.weather.api;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives many OpenWeatherProviders at once against a FakeOpenWeatherServer, and reports
+ * throughput and latency percentiles for whole fetchWeatherAsync() calls, i.e. including
+ * retries, decoding and the fan-out to both endpoints.
+ *
+ * Usage: WeatherLoadTest [providers [fetchesPerProvider [minLatencyMillis maxLatencyMillis [errorRate [gzip]]]]]
+ *
+ * Each provider asks for a different location and has its cache turned off, so every fetch goes to
+ * the server.
+ */
+public class WeatherLoadTest {
+    // The fake server ignores the key, so this needs no weather-display.properties
+    private static final String API_KEY = "load-test";
+
+    public static void main(String[] args) throws Exception {
+        int providerCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int fetchesPerProvider = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long minLatency = args.length > 3 ? Long.parseLong(args[2]) : 20;
+        long maxLatency = args.length > 3 ? Long.parseLong(args[3]) : 80;
+        double errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0.01;
+        boolean gzip = args.length <= 5 || Boolean.parseBoolean(args[5]);
+
+        try (FakeOpenWeatherServer server = new FakeOpenWeatherServer()) {
+            server.setLatency(Duration.ofMillis(minLatency), Duration.ofMillis(maxLatency));
+            server.setErrorRate(errorRate);
+            server.setGzip(gzip);
+            ApiQuota.setQuota(API_KEY, new ApiQuota(Integer.MAX_VALUE, Integer.MAX_VALUE, Duration.ZERO));
+
+            List<OpenWeatherProvider> providers = new ArrayList<>();
+            for (int n = 0; n < providerCount; n++) {
+                OpenWeatherProvider provider = new OpenWeatherProvider(
+                    API_KEY, server.getApiUrl(), WeatherLocation.ofCoordinates(40 + n * 0.01, -90 - n * 0.01));
+                provider.setCache(null);
+                providers.add(provider);
+            }
+
+            System.out.printf(
+                "%d providers x %d fetches, %d-%d ms server latency, %.1f%% errors, gzip %s%n",
+                providerCount, fetchesPerProvider, minLatency, maxLatency, errorRate * 100, gzip ? "on" : "off");
+
+            // Warm up the JIT and the connection pool, then measure
+            run(providers, Math.max(1, fetchesPerProvider / 5));
+            Result result = run(providers, fetchesPerProvider);
+
+            System.out.println();
+            System.out.printf("Fetches:     %d in %.2f s (%.1f/s)%n",
+                result.latencies.length, result.seconds, result.latencies.length / result.seconds);
+            System.out.printf("Failed:      %d complete, %d partial%n", result.failures, result.partials);
+            System.out.printf("Latency:     p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms, max %.1f ms%n",
+                percentile(result.latencies, 0.50),
+                percentile(result.latencies, 0.99),
+                percentile(result.latencies, 0.999),
+                percentile(result.latencies, 1.0));
+            System.out.printf("Server:      %d requests, %d simulated errors%n",
+                server.getRequestCount(), server.getErrorCount());
+        }
+        System.exit(0);
+    }
+
+    private static Result run(List<OpenWeatherProvider> providers, int fetchesPerProvider) throws InterruptedException {
+        long[] latencies = new long[providers.size() * fetchesPerProvider];
+        AtomicInteger failures = new AtomicInteger(), partials = new AtomicInteger();
+
+        // The provider logs every request; keep that out of the report
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        try {
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < providers.size(); p++) {
+                OpenWeatherProvider provider = providers.get(p);
+                int offset = p * fetchesPerProvider;
+                Thread thread = new Thread(() -> {
+                    for (int n = 0; n < fetchesPerProvider; n++) {
+                        long fetchStart = System.nanoTime();
+                        try {
+                            WeatherData data = provider.fetchWeatherAsync().join();
+                            if (!data.getFailures().isEmpty()) {
+                                partials.incrementAndGet();
+                            }
+                        } catch (RuntimeException e) {
+                            failures.incrementAndGet();
+                        }
+                        latencies[offset + n] = System.nanoTime() - fetchStart;
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+        return new Result(latencies, (System.nanoTime() - start) / 1e9, failures.get(), partials.get());
+    }
+
+    /**
+     * The given percentile of the latencies, in milliseconds. Sorts the array.
+     */
+    private static double percentile(long[] latencies, double fraction) {
+        Arrays.sort(latencies);
+        int index = (int) Math.ceil(fraction * latencies.length) - 1;
+        return latencies[Math.max(0, Math.min(latencies.length - 1, index))] / 1e6;
+    }
+
+    private static class Result {
+        private final long[] latencies;
+        private final double seconds;
+        private final int failures, partials;
+
+        Result(long[] latencies, double seconds, int failures, int partials) {
+            this.latencies = latencies;
+            this.seconds = seconds;
+            this.failures = failures;
+            this.partials = partials;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package net.aksingh.owmjapis;
+
+import comp127.weather.api.FakeOpenWeatherServer;
+import comp127.weather.api.OpenWeatherPayloads;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HttpClientTransport and URLConnectionTransport must both deliver exactly the body that
+ * FakeOpenWeatherServer sent, whether it came plain, gzipped or chunked, read whole or as a stream.
+ * For an error status or a server that does not answer in time, both must return null without
+ * calling the body reader.
+ */
+class OWMTransportTest {
+    private static final double LAT = 44.94, LON = -93.17;
+
+    @Test
+    void plainBody() throws IOException {
+        checkBodies(false, false);
+    }
+
+    @Test
+    void gzipBody() throws IOException {
+        checkBodies(true, false);
+    }
+
+    @Test
+    void chunkedBody() throws IOException {
+        checkBodies(false, true);
+    }
+
+    @Test
+    void gzipChunkedBody() throws IOException {
+        checkBodies(true, true);
+    }
+
+    @Test
+    void errorStatus() throws IOException {
+        try (FakeOpenWeatherServer server = new FakeOpenWeatherServer()) {
+            server.setErrorRate(1);
+            for (OWMTransport transport : transports(Duration.ofSeconds(10))) {
+                checkFails(transport, weatherAddress(server), "500 from " + transport.getClass().getSimpleName());
+            }
+            server.setErrorRate(0);
+            for (OWMTransport transport : transports(Duration.ofSeconds(10))) {
+                checkFails(transport, server.getApiUrl() + "nowhere?appid=test", "404 from " + transport.getClass().getSimpleName());
+                checkFails(transport, server.getApiUrl() + "weather?lat=1&lon=2", "401 from " + transport.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    void timeout() throws IOException {
+        try (FakeOpenWeatherServer server = new FakeOpenWeatherServer()) {
+            server.setLatency(Duration.ofSeconds(3), Duration.ofSeconds(3));
+            for (OWMTransport transport : transports(Duration.ofMillis(300))) {
+                long start = System.nanoTime();
+                checkFails(transport, weatherAddress(server), "Timeout from " + transport.getClass().getSimpleName());
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                assertTrue(millis < 2500, () -> transport.getClass().getSimpleName() + " took " + millis + " ms to time out");
+            }
+        }
+    }
+
+    private static void checkBodies(boolean gzip, boolean chunked) throws IOException {
+        try (FakeOpenWeatherServer server = new FakeOpenWeatherServer()) {
+            server.setGzip(gzip);
+            server.setChunked(chunked);
+            int seed = Double.hashCode(LAT) * 31 + Double.hashCode(LON);
+            String weather = OpenWeatherPayloads.currentWeather(seed, LAT, LON);
+            String forecast = OpenWeatherPayloads.hourlyForecast(seed, LAT, LON, 40);
+            String forecastAddress = server.getApiUrl() + "forecast?lat=" + LAT + "&lon=" + LON + "&appid=test";
+
+            for (OWMTransport transport : transports(Duration.ofSeconds(10))) {
+                // Several times each, so that pooled and kept-alive connections get reused
+                for (int n = 0; n < 3; n++) {
+                    String name = transport.getClass().getSimpleName() + " (gzip " + gzip + ", chunked " + chunked + ")";
+                    assertEquals(weather, transport.get(weatherAddress(server)), () -> name);
+                    assertEquals(forecast, transport.get(forecastAddress), () -> name);
+                    assertEquals(forecast, transport.get(forecastAddress, body -> new String(body.readAllBytes(), StandardCharsets.UTF_8)),
+                        () -> name + " as a stream");
+                    // A reader that stops early must not break the next request on the connection
+                    assertEquals("{", transport.get(forecastAddress, body -> String.valueOf((char) body.read())), () -> name + " partly read");
+                }
+            }
+        }
+    }
+
+    private static void checkFails(OWMTransport transport, String address, String name) {
+        assertNull(transport.get(address), () -> name);
+        AtomicBoolean read = new AtomicBoolean();
+        assertNull(transport.get(address, body -> {
+            read.set(true);
+            return "read";
+        }), () -> name + " as a stream");
+        assertFalse(read.get(), () -> name + " called the body reader");
+    }
+
+    private static String weatherAddress(FakeOpenWeatherServer server) {
+        return server.getApiUrl() + "weather?lat=" + LAT + "&lon=" + LON + "&appid=test";
+    }
+
+    private static List<OWMTransport> transports(Duration timeout) {
+        return List.of(
+            new HttpClientTransport(Duration.ofSeconds(10), timeout),
+            new URLConnectionTransport(null, Duration.ofSeconds(10), timeout));
+    }
+}
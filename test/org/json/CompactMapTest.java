@@ -0,0 +1,263 @@
+package org.json;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A CompactMap must always hold exactly what a HashMap given the same changes would, whether it
+ * is small enough for its arrays or has moved into a HashMap: through put, remove and clear,
+ * through removing and setting values while iterating, and with a ConcurrentModificationException
+ * for iterators and entries used after the map changed under them. Keys that JSONTokener caches
+ * must be the same text as the source, and a quoted key repeated within a document must come back
+ * as the same String, as long as no other key has taken its place in the cache.
+ */
+class CompactMapTest {
+    @Test
+    void randomChanges() {
+        Random random = new Random(1);
+        for (int n = 0; n < 3000; n++) {
+            // Small key sets stay in the arrays; larger ones move into a HashMap partway through
+            List<String> keys = randomKeys(random, 1 + random.nextInt(n % 2 == 0 ? 6 : 20));
+            CompactMap actual = new CompactMap(random.nextInt(12));
+            Map<String, Object> expected = new HashMap<>();
+            for (int step = random.nextInt(60); step >= 0; step--) {
+                String key = pick(keys, random);
+                int value = random.nextInt(5);
+                String at = "step " + step + " on " + expected;
+                switch (random.nextInt(8)) {
+                    case 0:
+                    case 1:
+                    case 2:
+                        assertEquals(expected.put(key, value), actual.put(key, value), () -> at + " put " + key);
+                        break;
+                    case 3:
+                        assertEquals(expected.remove(key), actual.remove(key), () -> at + " remove " + key);
+                        break;
+                    case 4:
+                        assertEquals(expected.get(key), actual.get(key), () -> at + " get " + key);
+                        assertEquals(expected.containsKey(key), actual.containsKey(key), () -> at + " containsKey " + key);
+                        break;
+                    case 5:
+                        changeWhileIterating(expected, actual, random);
+                        break;
+                    case 6:
+                        if (random.nextInt(10) == 0) {
+                            expected.clear();
+                            actual.clear();
+                        }
+                        break;
+                    default:
+                        assertEquals(expected.containsValue(value), actual.containsValue(value), () -> at + " containsValue " + value);
+                }
+                assertEquals(expected.size(), actual.size(), () -> at + " size");
+                assertEquals(expected.isEmpty(), actual.isEmpty(), () -> at + " isEmpty");
+                assertEquals(expected, actual, () -> at);
+                assertEquals(expected.hashCode(), actual.hashCode(), () -> at + " hashCode");
+            }
+        }
+    }
+
+    @Test
+    void concurrentModification() {
+        for (int size = 1; size <= CompactMap.MAX_ARRAY_SIZE + 4; size++) {
+            CompactMap map = new CompactMap();
+            for (int i = 0; i < size; i++) {
+                map.put("k" + i, i);
+            }
+            int entries = size;
+
+            // Replacing a value is not a structural change
+            Iterator<Map.Entry<String, Object>> iterator = map.entrySet().iterator();
+            Map.Entry<String, Object> entry = iterator.next();
+            map.put(entry.getKey(), -1);
+            assertEquals(-1, entry.getValue(), () -> entries + " entries: value after put");
+            if (iterator.hasNext()) {
+                iterator.next();
+            }
+
+            // Adding a key is
+            Iterator<Map.Entry<String, Object>> added = map.entrySet().iterator();
+            Map.Entry<String, Object> addedEntry = added.next();
+            map.put("new", 0);
+            assertThrows(ConcurrentModificationException.class, added::next, () -> entries + " entries: next after add");
+            if (size <= CompactMap.MAX_ARRAY_SIZE) {
+                // Entries of a HashMap stay usable, but the arrays may have shifted under these
+                assertThrows(ConcurrentModificationException.class, addedEntry::getValue, () -> entries + " entries: entry after add");
+            }
+
+            // So is removing one, other than through the iterator
+            Iterator<Map.Entry<String, Object>> removed = map.entrySet().iterator();
+            removed.next();
+            map.remove("new");
+            assertThrows(ConcurrentModificationException.class, removed::next, () -> entries + " entries: next after remove");
+
+            // Removing through the iterator is fine, but only once per next()
+            Iterator<Map.Entry<String, Object>> own = map.entrySet().iterator();
+            own.next();
+            own.remove();
+            assertThrows(IllegalStateException.class, own::remove, () -> entries + " entries: second remove");
+            if (own.hasNext()) {
+                own.next();
+            }
+            assertEquals(size - 1, map.size());
+        }
+    }
+
+    @Test
+    void emptyAndNullKeys() {
+        CompactMap actual = new CompactMap();
+        Map<String, Object> expected = new HashMap<>();
+        for (String key : new String[] { "", null, "a", null, "" }) {
+            assertEquals(expected.put(key, 1), actual.put(key, 1));
+        }
+        assertEquals(expected, actual);
+        assertTrue(actual.containsKey(null));
+        assertEquals(expected.remove(null), actual.remove(null));
+        assertFalse(actual.containsKey(null));
+        assertEquals(expected, actual);
+    }
+
+    /**
+     * Nested objects and arrays of similar objects, with keys that are quoted, single-quoted,
+     * unquoted, escaped, longer than the cache takes, and numerous enough to collide in it.
+     */
+    @Test
+    void tokenerKeys() {
+        Random random = new Random(2);
+        for (int n = 0; n < 2000; n++) {
+            List<String> keys = randomKeys(random, 1 + random.nextInt(n % 10 == 0 ? 600 : 12));
+            List<Map<String, Integer>> objects = new ArrayList<>();
+            StringBuilder text = new StringBuilder("[");
+            for (int count = 1 + random.nextInt(6); count > 0; count--) {
+                Map<String, Integer> object = new HashMap<>();
+                text.append(text.length() > 1 ? "," : "").append('{');
+                for (int members = random.nextInt(Math.min(keys.size(), 40) + 1); members > 0; members--) {
+                    String key = pick(keys, random);
+                    if (object.containsKey(key)) {
+                        continue;
+                    }
+                    object.put(key, object.size());
+                    text.append(object.size() > 1 ? "," : "").append(quote(key, random)).append(':').append(object.size() - 1);
+                }
+                objects.add(object);
+                text.append('}');
+            }
+            String document = text.append(']').toString();
+
+            for (JSONTokener tokener : List.of(new JSONTokener(document), new JSONTokener(new StringReader(document)))) {
+                JSONArray array = (JSONArray) tokener.nextValue();
+                for (int i = 0; i < objects.size(); i++) {
+                    JSONObject object = array.getJSONObject(i);
+                    Map<String, Object> parsed = new HashMap<>();
+                    for (String key : object.keySet()) {
+                        parsed.put(key, object.get(key));
+                    }
+                    int index = i;
+                    assertEquals(objects.get(i), parsed, () -> "Object " + index + " of " + document);
+                }
+            }
+        }
+    }
+
+    @Test
+    void repeatedKeys() {
+        String document = "[{\"dt\":1,\"main\":{\"temp\":2,\"humidity\":3},\"wind\":{\"speed\":4}},"
+            + "{'dt':5,\"main\":{\"temp\":6,'humidity':7},\"wind\":{\"speed\":8}}]";
+        for (JSONTokener tokener : List.of(new JSONTokener(document), new JSONTokener(new StringReader(document)))) {
+            JSONArray array = (JSONArray) tokener.nextValue();
+            Map<String, String> seen = new HashMap<>();
+            collectKeys(array.getJSONObject(0), seen);
+            Map<String, String> again = new HashMap<>();
+            collectKeys(array.getJSONObject(1), again);
+            assertEquals(seen.keySet(), again.keySet());
+            for (String key : seen.keySet()) {
+                assertSame(seen.get(key), again.get(key), () -> "Repeated key " + key);
+            }
+        }
+    }
+
+    private static void collectKeys(JSONObject object, Map<String, String> keys) {
+        for (String key : object.keySet()) {
+            keys.put(key, key);
+            if (object.opt(key) instanceof JSONObject) {
+                collectKeys(object.getJSONObject(key), keys);
+            }
+        }
+    }
+
+    /**
+     * Makes the same changes to both maps while iterating over their entries: sets some values
+     * through the entries, and removes other entries through the iterator. Both decide by key, as
+     * the maps may iterate in different orders.
+     */
+    private static void changeWhileIterating(Map<String, Object> expected, CompactMap actual, Random random) {
+        int salt = random.nextInt();
+        int value = random.nextInt(5);
+        for (Map<String, Object> map : List.of(expected, actual)) {
+            Iterator<Map.Entry<String, Object>> iterator = map.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Object> entry = iterator.next();
+                int choice = Math.floorMod(String.valueOf(entry.getKey()).hashCode() ^ salt, 3);
+                if (choice == 0) {
+                    iterator.remove();
+                } else if (choice == 1) {
+                    entry.setValue(value);
+                    assertEquals(value, map.get(entry.getKey()), () -> "Wrote through " + entry.getKey());
+                }
+            }
+        }
+        assertEquals(expected, actual, () -> "After iterating with salt " + salt);
+    }
+
+    /**
+     * Distinct keys, mostly short, some with characters that need escaping, some too long to cache.
+     */
+    private static List<String> randomKeys(Random random, int count) {
+        Set<String> keys = new HashSet<>();
+        while (keys.size() < count) {
+            StringBuilder key = new StringBuilder();
+            int length = random.nextInt(20) == 0 ? 33 + random.nextInt(10) : 1 + random.nextInt(10);
+            for (int i = 0; i < length; i++) {
+                key.append(random.nextInt(15) == 0 ? "\"\\/\né中 ".charAt(random.nextInt(7)) : (char) ('a' + random.nextInt(26)));
+            }
+            keys.add(key.toString());
+        }
+        return new ArrayList<>(keys);
+    }
+
+    /**
+     * A key, or a copy of it, so that the maps cannot rely on seeing the same String instance.
+     */
+    private static String pick(List<String> keys, Random random) {
+        String key = keys.get(random.nextInt(keys.size()));
+        return random.nextBoolean() ? new String(key) : key;
+    }
+
+    private static String quote(String key, Random random) {
+        boolean plain = key.chars().allMatch(c -> c >= 'a' && c <= 'z');
+        switch (random.nextInt(plain ? 3 : 1)) {
+            case 1:
+                return "'" + key + "'";
+            case 2:
+                return key;
+            default:
+                return JSONObject.quote(key);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.json;
+
+import comp127.weather.api.OpenWeatherPayloads;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A JSONIndex must accept exactly the texts JSONPullParser accepts, and decode exactly what
+ * JSONTokener makes of the same text: the same structure, the same classes of numbers with the
+ * same bits, and the same Strings. Each text is compared once decoded in full and once after
+ * reading a random path into it first, and changes made to lazy objects and arrays are compared
+ * with the same changes made to eager ones. Each corpus is also checked with random damage.
+ */
+class JSONIndexTest {
+    private static final String[] NUMBERS = {
+        "0", "-0", "1", "-17", "3.25", "-0.5", "1e3", "2E-2", "6.02e+23", "1.0", "9223372036854775807",
+        "9223372036854775808", "-9223372036854775809", "12345678901234567890123", "1e400", "4.9e-325"
+    };
+    private static final String STRING_CHARS = "ab \u00e9\u2028\ud83d\ude00";
+    private static final String[] ESCAPES = {"\\\"", "\\\\", "\\/", "\\b", "\\f", "\\n", "\\r", "\\t", "\\u00e9", "\\uD83D", "\\'"};
+
+    private static final Pattern JSON_NUMBER = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+    @Test
+    void openWeatherPayloads() {
+        Random random = new Random(1);
+        for (int seed = 0; seed < 30; seed++) {
+            checkWithDamage(OpenWeatherPayloads.currentWeather(seed, 44.94, -93.17), random);
+            checkWithDamage(OpenWeatherPayloads.hourlyForecast(seed, -33.9, 151.2, 40), random);
+            checkWithDamage(OpenWeatherPayloads.dailyForecast(seed, 64.1, -21.9, 16), random);
+        }
+        checkWithDamage(OpenWeatherPayloads.multiCity(1, 100), random);
+    }
+
+    @Test
+    void randomJson() {
+        Random random = new Random(2);
+        for (int n = 0; n < 5000; n++) {
+            StringBuilder out = new StringBuilder();
+            randomValue(random, out, 0);
+            checkWithDamage(out.toString(), random);
+        }
+    }
+
+    @Test
+    void edgeCases() {
+        Random random = new Random(3);
+        List<String> corpus = List.of(
+            "[]",
+            " [ 1 ] ",
+            "{}",
+            "{ \"a\" : [ ] , \"b\" : { } }",
+            "\"top\"",
+            "17",
+            "{'single':'quoted'}",
+            "{\"a\":1,}",
+            "[1,]",
+            "[01]",
+            "{\"a\":\"line\nbreak\"}");
+        for (String document : corpus) {
+            checkWithDamage(document, random);
+        }
+    }
+
+    private static void checkWithDamage(String document, Random random) {
+        check(document, random);
+        check(damage(document, random), random);
+    }
+
+    private static void check(String document, Random random) {
+        boolean strict = isStrict(document);
+        JSONIndex index;
+        try {
+            index = new JSONIndex(document);
+        } catch (JSONException e) {
+            assertFalse(strict, () -> "Rejected " + document + ": " + e.getMessage());
+            return;
+        }
+        assertTrue(strict, () -> "Accepted " + document);
+
+        Object eager;
+        try {
+            eager = new JSONTokener(document).nextValue();
+        } catch (JSONException e) {
+            // Only a duplicate key, which lazy objects do not report
+            assertTrue(e.getMessage().startsWith("Duplicate key"),
+                () -> "JSONTokener rejected " + document + ": " + e.getMessage());
+            return;
+        }
+        String expected = JSONTokenerCorpusTest.describe(eager);
+        assertEquals(expected, JSONTokenerCorpusTest.describe(index.getRoot()), () -> "Decoding " + document);
+
+        Object lazy = new JSONIndex(document).getRoot();
+        readRandomPath(eager, lazy, random);
+        assertEquals(expected, JSONTokenerCorpusTest.describe(lazy), () -> "Decoding " + document + " after a path");
+
+        lazy = new JSONIndex(document).getRoot();
+        readRandomPath(eager, lazy, random);
+        if (eager instanceof JSONObject) {
+            JSONObject e = (JSONObject) eager;
+            JSONObject l = (JSONObject) lazy;
+            String key = e.length() > 0 ? e.keys().next() : "missing";
+            e.remove(key);
+            l.remove(key);
+            e.put("added", 1);
+            l.put("added", 1);
+            assertEquals(JSONTokenerCorpusTest.describe(e), JSONTokenerCorpusTest.describe(l),
+                () -> "Changing " + document);
+        } else if (eager instanceof JSONArray) {
+            JSONArray e = (JSONArray) eager;
+            JSONArray l = (JSONArray) lazy;
+            if (e.length() > 0) {
+                e.remove(0);
+                l.remove(0);
+            }
+            e.put(3, "put");
+            l.put(3, "put");
+            assertEquals(JSONTokenerCorpusTest.describe(e), JSONTokenerCorpusTest.describe(l),
+                () -> "Changing " + document);
+        }
+    }
+
+    /**
+     * Whether JSONPullParser accepts the text with every number in the JSON grammar, and there is
+     * no NUL, which JSONTokener takes to be the end of the text.
+     */
+    private static boolean isStrict(String document) {
+        if (document.indexOf('\0') >= 0) {
+            return false;
+        }
+        try {
+            JSONPullParser parser = new JSONPullParser(document);
+            for (JSONPullParser.Event event = parser.next(); event != JSONPullParser.Event.END_DOCUMENT; event = parser.next()) {
+                if (event == JSONPullParser.Event.NUMBER && !JSON_NUMBER.matcher(parser.getString()).matches()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a random member or element of each level down, as a program picking out a few fields
+     * would, choosing from the eager value so as not to iterate over the lazy one.
+     */
+    private static void readRandomPath(Object eager, Object lazy, Random random) {
+        while (true) {
+            if (eager instanceof JSONObject) {
+                String[] keys = ((JSONObject) eager).keySet().toArray(new String[0]);
+                if (keys.length == 0) {
+                    return;
+                }
+                String key = keys[random.nextInt(keys.length)];
+                eager = ((JSONObject) eager).opt(key);
+                lazy = ((JSONObject) lazy).opt(key);
+            } else if (eager instanceof JSONArray) {
+                int length = ((JSONArray) eager).length();
+                if (length == 0) {
+                    return;
+                }
+                int i = random.nextInt(length);
+                eager = ((JSONArray) eager).opt(i);
+                lazy = ((JSONArray) lazy).opt(i);
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void randomValue(Random random, StringBuilder out, int depth) {
+        int kind = random.nextInt(depth < 4 ? 7 : 5);
+        space(random, out);
+        switch (kind) {
+            case 0:
+                out.append(NUMBERS[random.nextInt(NUMBERS.length)]);
+                break;
+            case 1:
+                out.append(random.nextBoolean() ? "true" : random.nextBoolean() ? "false" : "null");
+                break;
+            case 2:
+            case 3:
+            case 4:
+                randomString(random, out);
+                break;
+            case 5:
+                out.append('[');
+                for (int n = random.nextInt(5); n > 0; n--) {
+                    randomValue(random, out, depth + 1);
+                    out.append(n > 1 ? "," : "");
+                }
+                space(random, out);
+                out.append(']');
+                break;
+            default:
+                out.append('{');
+                int members = random.nextInt(12);
+                for (int n = 0; n < members; n++) {
+                    space(random, out);
+                    // Mostly distinct keys, some of them escaped, and the odd duplicate
+                    out.append(random.nextInt(50) == 0 ? "\"k0\"" : random.nextInt(5) == 0 ? "\"k\\u0030" + n + "\"" : "\"k" + n + "\"");
+                    space(random, out);
+                    out.append(':');
+                    randomValue(random, out, depth + 1);
+                    out.append(n < members - 1 ? "," : "");
+                }
+                space(random, out);
+                out.append('}');
+        }
+        space(random, out);
+    }
+
+    private static void randomString(Random random, StringBuilder out) {
+        out.append('"');
+        for (int n = random.nextInt(10); n > 0; n--) {
+            if (random.nextInt(4) == 0) {
+                out.append(ESCAPES[random.nextInt(ESCAPES.length)]);
+            } else {
+                out.append(STRING_CHARS.charAt(random.nextInt(STRING_CHARS.length())));
+            }
+        }
+        out.append('"');
+    }
+
+    private static void space(Random random, StringBuilder out) {
+        if (random.nextInt(4) == 0) {
+            out.append(" \n\t\r".charAt(random.nextInt(4)));
+        }
+    }
+
+    /**
+     * Deletes, duplicates or replaces a few characters.
+     */
+    private static String damage(String document, Random random) {
+        StringBuilder out = new StringBuilder(document);
+        for (int edits = 1 + random.nextInt(3); edits > 0 && out.length() > 0; edits--) {
+            int at = random.nextInt(out.length());
+            switch (random.nextInt(3)) {
+                case 0:
+                    out.deleteCharAt(at);
+                    break;
+                case 1:
+                    out.insert(at, out.charAt(at));
+                    break;
+                default:
+                    out.setCharAt(at, " \n\r\"'\\,:{}[]0-.eu\0".charAt(random.nextInt(18)));
+            }
+        }
+        return out.toString();
+    }
+}
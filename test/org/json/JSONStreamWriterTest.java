@@ -0,0 +1,123 @@
+package org.json;
+
+import comp127.weather.api.OpenWeatherPayloads;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * JSONStreamWriter must write exactly the text that toString() gives for the same JSONObject or
+ * JSONArray, whether it writes to a StringBuilder, to an OutputStream or to a ByteBuffer, and the
+ * bytes must be what String.getBytes() makes of that text. Random strings are made of the
+ * characters that need escaping, of non-ASCII text, and of surrogates, paired and not.
+ */
+class JSONStreamWriterTest {
+    private static final String TRICKY_CHARS =
+        "ab </\"\\\b\t\n\f\r\u0000\u001f\u007f\u0080\u009f\u00a0\u00e9\u2000\u20ff\u2100"
+        + "\ud83d\ude00\ud83d\ude00\ud800\udc00";
+
+    private final ByteBuffer reused = ByteBuffer.allocate(1 << 20);
+    private final JSONStreamWriter reusedWriter = new JSONStreamWriter(reused);
+
+    @Test
+    void openWeatherPayloads() {
+        for (int seed = 0; seed < 20; seed++) {
+            check(new JSONObject(OpenWeatherPayloads.currentWeather(seed, 44.94, -93.17)));
+            check(new JSONObject(OpenWeatherPayloads.hourlyForecast(seed, -33.9, 151.2, 40)));
+        }
+        check(new JSONObject(OpenWeatherPayloads.multiCity(1, 100)));
+    }
+
+    @Test
+    void randomValues() {
+        Random random = new Random(1);
+        for (int n = 0; n < 2000; n++) {
+            check(randomArray(random, 40));
+        }
+    }
+
+    /**
+     * Strings long enough to cross the writer's buffer.
+     */
+    @Test
+    void longStrings() {
+        Random random = new Random(2);
+        for (int n = 0; n < 100; n++) {
+            check(randomArray(random, 5000));
+        }
+    }
+
+    private void check(Object value) {
+        String expected = value.toString();
+        byte[] expectedBytes = expected.getBytes(StandardCharsets.UTF_8);
+
+        StringBuilder text = new StringBuilder();
+        JSONStreamWriter toText = new JSONStreamWriter(text);
+        toText.value(value);
+        close(toText);
+        assertEquals(expected, text.toString(), "Writing to a StringBuilder");
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        JSONStreamWriter toStream = new JSONStreamWriter(stream);
+        toStream.value(value);
+        close(toStream);
+        assertArrayEquals(expectedBytes, stream.toByteArray(), () -> "Writing " + expected + " to an OutputStream");
+
+        reused.clear();
+        reusedWriter.reset();
+        reusedWriter.value(value);
+        close(reusedWriter);
+        assertArrayEquals(expectedBytes, Arrays.copyOf(reused.array(), reused.position()),
+            () -> "Writing " + expected + " to a ByteBuffer");
+
+        if (expectedBytes.length > 1) {
+            JSONStreamWriter tooSmall = new JSONStreamWriter(ByteBuffer.allocate(expectedBytes.length - 1));
+            assertThrows(BufferOverflowException.class, () -> {
+                tooSmall.value(value);
+                close(tooSmall);
+            }, () -> "Writing " + expectedBytes.length + " bytes into one less");
+        }
+    }
+
+    private static JSONArray randomArray(Random random, int maxStringLength) {
+        JSONArray array = new JSONArray();
+        for (int length = random.nextInt(4); length >= 0; length--) {
+            array.put(randomString(random, random.nextInt(maxStringLength)));
+        }
+        array.put(random.nextLong());
+        array.put(random.nextInt());
+        array.put((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20));
+        array.put((random.nextInt(2000) - 1000) / (double) (1 << random.nextInt(8)));
+        array.put(random.nextInt(30000000) - 15000000.0);
+        array.put(-0.0);
+        array.put(random.nextBoolean());
+        array.put(new JSONObject().put(randomString(random, 5), JSONObject.NULL));
+        return array;
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder out = new StringBuilder(length);
+        for (int n = 0; n < length; n++) {
+            out.append(TRICKY_CHARS.charAt(random.nextInt(TRICKY_CHARS.length())));
+        }
+        return out.toString();
+    }
+
+    private static void close(JSONStreamWriter writer) {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
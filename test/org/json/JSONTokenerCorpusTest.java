@@ -0,0 +1,184 @@
+package org.json;
+
+import comp127.weather.api.OpenWeatherPayloads;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Parsing a String, which JSONTokener scans directly, must give exactly the same result as parsing
+ * the same text through a Reader one character at a time: the same structure, the same classes of
+ * numbers with the same bits, the same Strings, and the same error messages for bad input. Each
+ * corpus is also parsed with random damage.
+ */
+class JSONTokenerCorpusTest {
+    private static final String NUMBER_CHARS = "0123456789-+.eE";
+
+    @Test
+    void openWeatherPayloads() {
+        List<String> corpus = new ArrayList<>();
+        for (int seed = 0; seed < 50; seed++) {
+            corpus.add(OpenWeatherPayloads.currentWeather(seed, 44.94, -93.17));
+            corpus.add(OpenWeatherPayloads.hourlyForecast(seed, -33.9, 151.2, 40));
+            corpus.add(OpenWeatherPayloads.dailyForecast(seed, 64.1, -21.9, 16));
+        }
+        corpus.add(OpenWeatherPayloads.multiCity(1, 100));
+        checkWithDamage(corpus, new Random(1));
+    }
+
+    @Test
+    void randomNumbers() {
+        Random random = new Random(2);
+        List<String> corpus = new ArrayList<>();
+        for (int n = 0; n < 20000; n++) {
+            corpus.add(randomNumbers(random));
+        }
+        checkWithDamage(corpus, random);
+    }
+
+    @Test
+    void lenientSyntax() {
+        List<String> corpus = List.of(
+            "{'single':'quoted', unquoted: value, \"esc\\\"aped\": \"\\u00e9\\n\\t\\/\"; \"last\" : 1 }",
+            "[1 , 2 ,3,]",
+            "{\"a\":\"line\nbreak\"}",
+            "{\"a\":\"nul\0\"}",
+            "{\"a\":1\0}");
+        checkWithDamage(corpus, new Random(3));
+    }
+
+    private static void checkWithDamage(List<String> corpus, Random random) {
+        for (String document : corpus) {
+            check(document);
+            check(damage(document, random));
+        }
+    }
+
+    private static void check(String document) {
+        String expected = describe(parse(new JSONTokener(new StringReader(document))));
+        String actual = describe(parse(new JSONTokener(document)));
+        assertEquals(expected, actual, () -> "Parsing " + document);
+    }
+
+    private static Object parse(JSONTokener tokener) {
+        try {
+            Object value = tokener.nextValue();
+            return tokener.more() ? List.of(value, tokener.nextClean(), tokener.toString()) : value;
+        } catch (JSONException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Writes out a parsed value with the class of every leaf, so that for example 1 and 1.0, or a
+     * Long and a String, do not look alike.
+     */
+    static String describe(Object value) {
+        StringBuilder out = new StringBuilder();
+        describe(value, out);
+        return out.toString();
+    }
+
+    private static void describe(Object value, StringBuilder out) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            out.append('{');
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                out.append(JSONObject.quote(key)).append(':');
+                describe(object.opt(key), out);
+                out.append(',');
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray) {
+            out.append('[');
+            for (Object element : (JSONArray) value) {
+                describe(element, out);
+                out.append(',');
+            }
+            out.append(']');
+        } else if (value instanceof Iterable) {
+            out.append("trailing ");
+            for (Object element : (Iterable<?>) value) {
+                describe(element, out);
+                out.append(' ');
+            }
+        } else if (value instanceof Double) {
+            out.append("Double ").append(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof Throwable) {
+            out.append(value.getClass().getSimpleName()).append(": ").append(((Throwable) value).getMessage());
+        } else if (value == null) {
+            out.append("null");
+        } else {
+            out.append(value.getClass().getSimpleName()).append(' ').append(JSONObject.quote(value.toString()));
+        }
+    }
+
+    /**
+     * An array of random numbers, most of them valid JSON, in assorted spacing.
+     */
+    private static String randomNumbers(Random random) {
+        StringBuilder out = new StringBuilder("[");
+        int count = 1 + random.nextInt(8);
+        for (int n = 0; n < count; n++) {
+            if (n > 0) {
+                out.append(random.nextInt(4) == 0 ? " , " : ",");
+            }
+            switch (random.nextInt(7)) {
+                case 0:
+                    out.append(random.nextLong());
+                    break;
+                case 1:
+                    out.append(random.nextInt(2000) - 1000);
+                    break;
+                case 2:
+                    out.append(Double.longBitsToDouble(random.nextLong()));
+                    break;
+                case 3:
+                    out.append(String.format("%." + random.nextInt(17) + "f", (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(30))));
+                    break;
+                case 4:
+                    out.append(random.nextInt(100000)).append(random.nextBoolean() ? 'e' : 'E')
+                        .append(random.nextBoolean() ? "-" : "").append(random.nextInt(400));
+                    break;
+                case 5:
+                    out.append(random.nextBoolean() ? "-" : "").append(random.nextInt(10))
+                        .append(random.nextInt(3) == 0 ? "0000000000000000000" : "").append(random.nextInt(100));
+                    break;
+                default:
+                    for (int length = 1 + random.nextInt(8); length > 0; length--) {
+                        out.append(NUMBER_CHARS.charAt(random.nextInt(NUMBER_CHARS.length())));
+                    }
+            }
+        }
+        return out.append(random.nextInt(4) == 0 ? " ]" : "]").toString();
+    }
+
+    /**
+     * Deletes, duplicates or replaces a few characters.
+     */
+    private static String damage(String document, Random random) {
+        StringBuilder out = new StringBuilder(document);
+        for (int edits = 1 + random.nextInt(3); edits > 0 && out.length() > 0; edits--) {
+            int at = random.nextInt(out.length());
+            switch (random.nextInt(3)) {
+                case 0:
+                    out.deleteCharAt(at);
+                    break;
+                case 1:
+                    out.insert(at, out.charAt(at));
+                    break;
+                default:
+                    out.setCharAt(at, " \n\r\"'\\,:{}[]0-.e\0".charAt(random.nextInt(17)));
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,173 @@
+package org.json;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A NumberList must always hold exactly what an ArrayList given the same changes would: the same
+ * Integers, Longs and Doubles, with the same bits, and its unboxed getters must agree with
+ * intValue(), longValue() and doubleValue() of those. A parsed array of numbers must hold what
+ * JSONTokener.nextValue() makes of each element alone, every getter of JSONArray must give the
+ * same as it does for the boxed element, and it must write the same text.
+ */
+class NumberListTest {
+    /**
+     * Random adds, inserts, sets and removes of integers of every size and of doubles.
+     */
+    @Test
+    void numericChanges() {
+        Random random = new Random(1);
+        for (int n = 0; n < 1500; n++) {
+            checkChanges(random, false);
+        }
+    }
+
+    /**
+     * The same, plus the odd String, Long that fits in an int or JSONObject.NULL, which make the
+     * list box its elements.
+     */
+    @Test
+    void changesThatBox() {
+        Random random = new Random(2);
+        for (int n = 0; n < 500; n++) {
+            checkChanges(random, true);
+        }
+    }
+
+    @Test
+    void parsedArrays() {
+        Random random = new Random(3);
+        for (int n = 0; n < 5000; n++) {
+            List<String> elements = new ArrayList<>();
+            for (int length = random.nextInt(30); length >= 0; length--) {
+                elements.add(randomNumber(random, n % 10 == 0));
+            }
+            String text = "[" + String.join(",", elements) + "]";
+            JSONArray array = new JSONArray(text);
+            assertEquals(elements.size(), array.length(), () -> "Length of " + text);
+            List<Object> values = new ArrayList<>();
+            for (int i = 0; i < elements.size(); i++) {
+                Object value = new JSONTokener(elements.get(i)).nextValue();
+                values.add(value);
+                String at = text + " [" + i + "]";
+                assertSameValue(value, array.get(i), at);
+                if (value instanceof Number) {
+                    Number number = (Number) value;
+                    int index = i;
+                    assertEquals(number.doubleValue(), array.getDouble(index), () -> at + " getDouble()");
+                    assertEquals(number.doubleValue(), array.optDouble(index), () -> at + " optDouble()");
+                    assertEquals(number.longValue(), array.getLong(index), () -> at + " getLong()");
+                    assertEquals(number.longValue(), array.optLong(index), () -> at + " optLong()");
+                    assertEquals(number.intValue(), array.getInt(index), () -> at + " getInt()");
+                    assertEquals(number.intValue(), array.optInt(index), () -> at + " optInt()");
+                }
+            }
+            assertEquals(new JSONArray(values).toString(), array.toString(), () -> "Writing " + text);
+        }
+    }
+
+    private static void checkChanges(Random random, boolean rare) {
+        NumberList numbers = new NumberList();
+        List<Object> expected = new ArrayList<>();
+        for (int step = random.nextInt(200); step >= 0; step--) {
+            Object value = randomValue(random, rare);
+            int size = expected.size();
+            int op = random.nextInt(10);
+            if (op < 6 || size == 0) {
+                expected.add(value);
+                numbers.add(value);
+            } else if (op == 6) {
+                int i = random.nextInt(size + 1);
+                expected.add(i, value);
+                numbers.add(i, value);
+            } else if (op < 9) {
+                int i = random.nextInt(size);
+                assertSameValue(expected.set(i, value), numbers.set(i, value), "set " + i);
+            } else {
+                int i = random.nextInt(size);
+                assertSameValue(expected.remove(i), numbers.remove(i), "remove " + i);
+            }
+            assertSameElements(expected, numbers);
+        }
+    }
+
+    private static Object randomValue(Random random, boolean rare) {
+        switch (random.nextInt(rare ? 12 : 9)) {
+            case 0:
+                return random.nextInt(256) - 128;
+            case 1:
+                return random.nextInt();
+            case 2:
+                return random.nextBoolean() ? (long) Integer.MAX_VALUE + 1 + random.nextInt(1000) : Long.MIN_VALUE + random.nextInt(1000);
+            case 3:
+                // Exact as a double, or just not
+                return (random.nextBoolean() ? 1L : -1L) * ((1L << 53) + random.nextInt(3) - 1);
+            case 4:
+                return random.nextDouble() * 200 - 100;
+            case 5:
+                return Double.longBitsToDouble(random.nextLong());
+            case 6:
+                return -0.0;
+            case 7:
+                return (double) (random.nextInt(2000) - 1000);
+            case 8:
+                return 3e9 * (random.nextDouble() - 0.5);
+            case 9:
+                return "text";
+            case 10:
+                return (long) random.nextInt(100);
+            default:
+                return JSONObject.NULL;
+        }
+    }
+
+    private static String randomNumber(Random random, boolean rare) {
+        switch (random.nextInt(rare ? 8 : 6)) {
+            case 0:
+                return Integer.toString(random.nextInt(2000) - 1000);
+            case 1:
+                return Long.toString(random.nextLong());
+            case 2:
+                return String.format(Locale.ROOT, "%.2f", random.nextDouble() * 100 - 50);
+            case 3:
+                return Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20));
+            case 4:
+                return "-0";
+            case 5:
+                return random.nextInt(10) + "e" + random.nextInt(20);
+            case 6:
+                return "\"text\"";
+            default:
+                return "null";
+        }
+    }
+
+    private static void assertSameElements(List<Object> expected, NumberList numbers) {
+        assertEquals(expected.size(), numbers.size(), "size");
+        for (int i = 0; i < expected.size(); i++) {
+            Object value = expected.get(i);
+            assertSameValue(value, numbers.get(i), "get(" + i + ")");
+            if (numbers.isUnboxed()) {
+                Number number = (Number) value;
+                assertEquals(number.doubleValue(), numbers.doubleAt(i), "doubleAt(" + i + ")");
+                assertEquals(number.longValue(), numbers.longAt(i), "longAt(" + i + ")");
+                assertEquals(number.intValue(), numbers.intAt(i), "intAt(" + i + ")");
+            }
+        }
+    }
+
+    /**
+     * Asserts that two values are of the same class and equal. Double.equals() compares bits, so
+     * this also tells -0.0 from 0.0.
+     */
+    private static void assertSameValue(Object expected, Object actual, String what) {
+        assertEquals(expected, actual, what);
+        assertEquals(expected.getClass(), actual.getClass(), what);
+    }
+}